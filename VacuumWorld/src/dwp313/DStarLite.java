@@ -0,0 +1,305 @@
+/**
+ * Author:      Daniel Phang
+ * Class:       CSE431 Intelligent Agents
+ * Professor:   Jeff Heflin
+ * Date:        September 19, 2013
+ * Assignment:  Program #1
+ * Environment: Java 1.6
+ */
+
+package dwp313;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import vacworld.Direction;
+
+/**
+ * An incremental path search based on D* Lite (Koenig and Likhachev, 2002).
+ * The search runs backwards from a goal to the agent and keeps its state
+ * between calls. When the agent moves, or the internal state learns about new
+ * locations or obstacles, only the part of the search that depends on them is
+ * repaired, rather than searching again from scratch.
+ * 
+ * Locations are the ids of the internal state. Moving between two adjacent
+ * locations costs 2, like in the planner's A* search, and the heuristic is
+ * twice the Manhattan distance from the agent. The changes to the map are read
+ * from the internal state's change log.
+ * 
+ * @author Daniel Phang
+ * 
+ */
+public class DStarLite {
+    /* A cost larger than any path, that can still be added to. */
+    private static final int INFINITY = Integer.MAX_VALUE / 4;
+
+    private final InternalState iState;
+
+    /* The goal, or -1 if there is none yet. */
+    private int goal = -1;
+
+    /*
+     * The agent's position the last time the keys were adjusted. Keys are
+     * computed with the heuristic from the agent, so when the agent moves the
+     * keys in the queue become too large by up to the distance moved; km
+     * collects these distances so they don't have to be recomputed.
+     */
+    private int lastX;
+    private int lastY;
+    private int km;
+
+    /*
+     * Search state, indexed by location id. A location's costs are only valid
+     * if its search number is the number of the current search (a new search
+     * starts with each goal), and are infinite otherwise, so the arrays do not
+     * have to be cleared.
+     */
+    private int[] g = new int[0];
+    private int[] rhs = new int[0];
+    private int[] searchNumbers = new int[0];
+    private int searchNumber = 0;
+    private final IdHeap queue = new IdHeap();
+
+    /* How far this search has read the internal state's change log. */
+    private int numChangesSeen;
+
+    /* The number of locations expanded so far, for comparing searches. */
+    private long numExpanded = 0;
+
+    /**
+     * Construct a search over the given internal state.
+     * 
+     * @param iState
+     */
+    public DStarLite(InternalState iState) {
+        this.iState = iState;
+        iState.logChanges();
+    }
+
+    /**
+     * @return the goal location's id, or -1 if there is none.
+     */
+    public int getGoal() {
+        return goal;
+    }
+
+    /**
+     * @return the number of locations expanded by all searches so far.
+     */
+    public long getNumExpanded() {
+        return numExpanded;
+    }
+
+    /**
+     * Set the goal of the search. If it is a different goal, the search starts
+     * over.
+     * 
+     * @param goalId
+     *            the id of the goal location.
+     */
+    public void setGoal(int goalId) {
+        if (goalId == goal) {
+            return;
+        }
+        goal = goalId;
+        numChangesSeen = iState.getNumChanges();
+        growTo(iState.getIdLimit());
+        if (++searchNumber == 0) { // The numbers wrapped around
+            Arrays.fill(searchNumbers, 0);
+            searchNumber = 1;
+        }
+        queue.clear();
+        km = 0;
+        lastX = iState.getAgentX();
+        lastY = iState.getAgentY();
+
+        touch(goal);
+        rhs[goal] = 0;
+        queue.put(goal, key(goal));
+    }
+
+    /**
+     * Find the shortest known path from the agent's current position to the
+     * goal, repairing the search for any changes since the last call. Among
+     * equally short paths, the one that keeps going straight the longest is
+     * chosen, since that needs fewer turns.
+     * 
+     * @return the path from the current position to the goal (including both),
+     *         or null if there is no known path.
+     */
+    public LinkedList<Vector2> findPath() {
+        int start = iState.getLocationId(iState.getAgentX(),
+                iState.getAgentY());
+        if (goal < 0 || start < 0) {
+            return null;
+        }
+
+        // The keys in the queue were computed with the heuristic from where
+        // the agent was then
+        if (lastX != iState.getAgentX() || lastY != iState.getAgentY()) {
+            km += heuristic(lastX, lastY);
+            lastX = iState.getAgentX();
+            lastY = iState.getAgentY();
+        }
+
+        // Apply the changes to the map since the last search
+        int numChanges = iState.getNumChanges();
+        if (numChangesSeen < numChanges) {
+            growTo(iState.getIdLimit());
+            for (int i = numChangesSeen; i < numChanges; i++) {
+                int changed = iState.getChangedId(i);
+                updateVertex(changed);
+                for (int d = Direction.NORTH; d <= Direction.WEST; ++d) {
+                    int neighbor = iState.getNeighborId(changed, d);
+                    if (neighbor >= 0) {
+                        updateVertex(neighbor);
+                    }
+                }
+            }
+            numChangesSeen = numChanges;
+        }
+
+        computeShortestPath(start);
+        if (rhs(start) >= INFINITY) {
+            return null;
+        }
+
+        // Follow the costs down to the goal
+        LinkedList<Vector2> path = new LinkedList<Vector2>();
+        path.add(iState.getLocationPosition(start));
+        int current = start;
+        int direction = iState.getAgentDirection();
+        while (current != goal) {
+            int next = -1;
+            int nextDirection = direction;
+            int best = INFINITY;
+            for (int i = 0; i < 4; i++) {
+                int d = (direction + i) % 4; // Try going straight first
+                int neighbor = iState.getNeighborId(current, d);
+                if (neighbor >= 0 && g(neighbor) < best) {
+                    best = g(neighbor);
+                    next = neighbor;
+                    nextDirection = d;
+                }
+            }
+            // Stop if there is no way forward, or the costs are going round
+            // in circles
+            if (next < 0 || path.size() > iState.getNumLocations()) {
+                return null;
+            }
+            path.add(iState.getLocationPosition(next));
+            current = next;
+            direction = nextDirection;
+        }
+        return path;
+    }
+
+    /**
+     * Expand locations until the agent's location is consistent and no
+     * location in the queue could give it a shorter path.
+     */
+    private void computeShortestPath(int start) {
+        long startKey = key(start);
+        while (queue.peekKey() < startKey || rhs(start) != g(start)) {
+            if (queue.isEmpty()) {
+                break;
+            }
+            int u = queue.peek();
+            long oldKey = queue.peekKey();
+            long newKey = key(u);
+            numExpanded++;
+            if (oldKey < newKey) { // The agent moved since it was queued
+                queue.put(u, newKey);
+            } else if (g(u) > rhs(u)) { // Its cost went down
+                g[u] = rhs[u]; // u is in the queue, so its costs are valid
+                queue.remove(u);
+                for (int d = Direction.NORTH; d <= Direction.WEST; ++d) {
+                    int neighbor = iState.getNeighborId(u, d);
+                    if (neighbor >= 0 && g[u] + 2 < rhs(neighbor)) {
+                        updateVertex(neighbor);
+                    }
+                }
+            } else { // Its cost went up
+                g[u] = INFINITY;
+                updateVertex(u);
+                for (int d = Direction.NORTH; d <= Direction.WEST; ++d) {
+                    int neighbor = iState.getNeighborId(u, d);
+                    if (neighbor >= 0) {
+                        updateVertex(neighbor);
+                    }
+                }
+            }
+            startKey = key(start);
+        }
+    }
+
+    /**
+     * Recompute a location's cost from its neighbors, and queue it if it is
+     * no longer consistent.
+     */
+    private void updateVertex(int u) {
+        if (u != goal) {
+            int best = INFINITY;
+            if (!iState.isObstacle(u)) {
+                for (int d = Direction.NORTH; d <= Direction.WEST; ++d) {
+                    int neighbor = iState.getNeighborId(u, d);
+                    if (neighbor >= 0 && g(neighbor) + 2 < best) {
+                        best = g(neighbor) + 2;
+                    }
+                }
+            }
+            touch(u);
+            rhs[u] = best;
+        }
+        if (g(u) != rhs(u)) {
+            queue.put(u, key(u));
+        } else {
+            queue.remove(u);
+        }
+    }
+
+    /**
+     * The key of a location in the queue: the smaller of its costs plus the
+     * heuristic, then the smaller of its costs.
+     */
+    private long key(int u) {
+        int cost = Math.min(g(u), rhs(u));
+        int first = Math.min(INFINITY,
+                cost + heuristic(iState.getLocationX(u), iState.getLocationY(u))
+                        + km);
+        return ((long) first << 32) | cost;
+    }
+
+    /* Twice the Manhattan distance from the agent to a position. */
+    private int heuristic(int x, int y) {
+        return 2 * (Math.abs(x - iState.getAgentX()) + Math.abs(y
+                - iState.getAgentY()));
+    }
+
+    private int g(int u) {
+        return searchNumbers[u] == searchNumber ? g[u] : INFINITY;
+    }
+
+    private int rhs(int u) {
+        return searchNumbers[u] == searchNumber ? rhs[u] : INFINITY;
+    }
+
+    /* Make a location's costs valid for the current search. */
+    private void touch(int u) {
+        if (searchNumbers[u] != searchNumber) {
+            searchNumbers[u] = searchNumber;
+            g[u] = INFINITY;
+            rhs[u] = INFINITY;
+        }
+    }
+
+    private void growTo(int idLimit) {
+        if (g.length < idLimit) {
+            int capacity = Math.max(idLimit, g.length * 2);
+            g = Arrays.copyOf(g, capacity);
+            rhs = Arrays.copyOf(rhs, capacity);
+            searchNumbers = Arrays.copyOf(searchNumbers, capacity);
+        }
+        queue.ensureCapacity(idLimit);
+    }
+}
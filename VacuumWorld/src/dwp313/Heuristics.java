@@ -9,6 +9,8 @@
 
 package dwp313;
 
+import vacworld.Direction;
+
 /**
  * Heuristic functions used by our planner, such as manhattan distance, turn
  * proximity (e.g. how many turns the agent needs to make to go to that
@@ -34,6 +36,41 @@ public class Heuristics {
         return Math.abs(dx) + Math.abs(dy);
     }
 
+    /*
+     * The number of turns needed before moving towards a position, indexed by
+     * the direction faced and the signs of the x and y offsets to the
+     * position (plus one). A position straight ahead needs no turns, one to
+     * the side or ahead to the side needs one turn, and one behind needs two.
+     */
+    private static final int[][][] TURNS = new int[4][3][3];
+
+    static {
+        for (int direction = 0; direction < 4; direction++) {
+            for (int sx = -1; sx <= 1; sx++) {
+                for (int sy = -1; sy <= 1; sy++) {
+                    // The sign of the dot product tells whether the position
+                    // is ahead of or behind the agent, and the cross product
+                    // whether it is straight ahead.
+                    int dot = Direction.DELTA_X[direction] * sx
+                            + Direction.DELTA_Y[direction] * sy;
+                    int cross = Direction.DELTA_X[direction] * sy
+                            - Direction.DELTA_Y[direction] * sx;
+                    int turns;
+                    if (sx == 0 && sy == 0) {
+                        turns = 0;
+                    } else if (dot > 0 && cross == 0) {
+                        turns = 0;
+                    } else if (dot >= 0) {
+                        turns = 1;
+                    } else {
+                        turns = 2;
+                    }
+                    TURNS[direction][sx + 1][sy + 1] = turns;
+                }
+            }
+        }
+    }
+
     /**
      * Estimates the cost in terms of turning, i.e how much turning our robot
      * needs to do in order to face the new location.
@@ -48,21 +85,26 @@ public class Heuristics {
      * @return
      */
     public static int turnCost(Vector2 start, Vector2 end, int direction) {
-        Vector2 currentDirectionVector = Vector2.directionToVector(direction);
-        Vector2 newDirectionVector = Vector2.sub(end, start);
-
-        double angle = Vector2
-                .angle(currentDirectionVector, newDirectionVector);
+        return turnCost(end.getX() - start.getX(), end.getY() - start.getY(),
+                direction);
+    }
 
-        if (angle == 0.0) {
-            return 0;
-        } else if (angle <= Math.PI / 2) {
-            return 1;
-        } else if (angle > Math.PI / 2) {
-            return 2;
-        } else { // Covers NaN case
-            return 0;
-        }
+    /**
+     * Estimates the number of turns needed to face towards a position with
+     * the given offset.
+     * 
+     * @param dx
+     *            the x offset from the starting position to the ending
+     *            position.
+     * @param dy
+     *            the y offset from the starting position to the ending
+     *            position.
+     * @param direction
+     *            the direction faced from the start position.
+     * @return
+     */
+    public static int turnCost(int dx, int dy, int direction) {
+        return TURNS[direction][Integer.signum(dx) + 1][Integer.signum(dy) + 1];
     }
 
     /**
@@ -81,9 +123,27 @@ public class Heuristics {
      * @return
      */
     public static int estimateCost(Vector2 start, Vector2 end, int direction) {
-        int moveCost = manHattanDistance(start, end) * 2;
-        int turnCost = turnCost(start, end, direction);
+        return estimateCost(end.getX() - start.getX(), end.getY()
+                - start.getY(), direction);
+    }
 
-        return moveCost + turnCost;
+    /**
+     * The same estimate as estimateCost(), computed with integers only. This
+     * is used by the planner's searches, which call it for every location
+     * they reach. It never overestimates the cost of a path in VacuumWorld,
+     * where a move costs 2 and a turn 1.
+     * 
+     * @param dx
+     *            the x offset from the starting position to the ending
+     *            position.
+     * @param dy
+     *            the y offset from the starting position to the ending
+     *            position.
+     * @param direction
+     *            the direction faced from the start position.
+     * @return
+     */
+    public static int estimateCost(int dx, int dy, int direction) {
+        return (Math.abs(dx) + Math.abs(dy)) * 2 + turnCost(dx, dy, direction);
     }
 }
@@ -0,0 +1,507 @@
+/**
+ * Author:      Daniel Phang
+ * Class:       CSE431 Intelligent Agents
+ * Professor:   Jeff Heflin
+ * Date:        September 19, 2013
+ * Assignment:  Program #1
+ * Environment: Java 1.6
+ */
+
+package dwp313;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import vacworld.Direction;
+
+/**
+ * A hierarchical path search (HPA*, Botea, Mueller and Schaeffer, 2004) over
+ * the agent's map, for rooms that are too large to search location by
+ * location on every plan.
+ * 
+ * The map is divided into clusters of 16 by 16 locations. Wherever locations
+ * on both sides of the border between two clusters can be moved through, the
+ * border has an entrance: one pair of locations in the middle of a short
+ * stretch of open border, or one at each end of a long one. The entrance
+ * locations are the nodes of an abstract graph. Nodes on either side of an
+ * entrance are joined by one move, and the nodes in a cluster are joined by
+ * the cost of the shortest path between them inside the cluster, which is
+ * computed when the cluster is built. When the map changes, the clusters
+ * around the locations that changed (found in the internal state's change
+ * log) are marked dirty, and are built again the next time a search reaches
+ * them.
+ * 
+ * A path is found by joining the start and goal to the nodes of their
+ * clusters, and searching the abstract graph with A*. Only the first few steps
+ * of the abstract path are refined into locations, since the plan is usually
+ * changed before the agent gets further; the planner searches again once it
+ * gets there. The paths found are close to the shortest, but not always the
+ * shortest, and only count moves (not turns).
+ * 
+ * @author Daniel Phang
+ * 
+ */
+public class HierarchicalSearch {
+    /* The size of the clusters. */
+    private static final int CLUSTER_BITS = 4;
+    private static final int CLUSTER_SIZE = 1 << CLUSTER_BITS;
+    private static final int CLUSTER_LOCATIONS = CLUSTER_SIZE * CLUSTER_SIZE;
+
+    /* An open stretch of border at least this long gets two entrances. */
+    private static final int LONG_ENTRANCE = 6;
+
+    /* The number of abstract edges refined into locations for each path. */
+    private static final int REFINED_EDGES = 2;
+
+    private static final int INFINITY = Integer.MAX_VALUE / 4;
+
+    private final InternalState iState;
+
+    /* The clusters that have been seen, by cluster coordinates. */
+    private final PositionMap clusterMap = new PositionMap();
+    private int numClusters = 0;
+    private int[] clusterXs = new int[16];
+    private int[] clusterYs = new int[16];
+
+    /*
+     * For each cluster: the location ids of its nodes, the node across the
+     * border from each node (-1 for none), and the costs between each pair of
+     * nodes (INFINITY if there is no path inside the cluster). A location at a
+     * corner can be a node twice, once for each border.
+     */
+    private int[][] nodes = new int[16][];
+    private int[][] partners = new int[16][];
+    private int[][] costs = new int[16][];
+
+    /* The clusters that have to be built again before they are searched. */
+    private boolean[] dirty = new boolean[16];
+
+    /* The goal of the last path, which the path might not have reached. */
+    private int goal = -1;
+
+    /* How far this search has read the internal state's change log. */
+    private int numChangesSeen = 0;
+
+    /* Search state for the abstract search, indexed by location id. */
+    private int[] g = new int[0];
+    private int[] cameFrom = new int[0];
+    private int[] visited = new int[0];
+    private int searchNumber = 0;
+    private final IdHeap open = new IdHeap();
+
+    /* Costs from the start and goal to the nodes of their clusters. */
+    private int[] startCosts = new int[0];
+    private int[] goalCosts = new int[0];
+
+    /* Scratch space for searches inside one cluster. */
+    private final int[] localCost = new int[CLUSTER_LOCATIONS];
+    private final int[] localParent = new int[CLUSTER_LOCATIONS];
+    private final int[] localQueue = new int[CLUSTER_LOCATIONS]; // ids
+
+    /* The number of abstract nodes expanded so far, for comparing searches. */
+    private long numExpanded = 0;
+
+    /**
+     * Construct a search over the given internal state. Every location the
+     * state has seen so far is included when the first path is searched for.
+     * 
+     * @param iState
+     */
+    public HierarchicalSearch(InternalState iState) {
+        this.iState = iState;
+        iState.logChanges();
+        for (int id = 0; id < iState.getIdLimit(); id++) {
+            if (iState.isSeen(id)) {
+                locationChanged(id);
+            }
+        }
+        numChangesSeen = iState.getNumChanges();
+    }
+
+    /**
+     * Return the goal of the last path while it is still unexplored, so the
+     * planner can keep heading for it instead of choosing another goal each
+     * time part of the path is done.
+     * 
+     * @return the goal location's id, or -1 if there is none.
+     */
+    public int getGoal() {
+        return goal >= 0 && iState.isFrontier(goal) ? goal : -1;
+    }
+
+    /**
+     * @return the number of abstract nodes expanded by all searches so far.
+     */
+    public long getNumExpanded() {
+        return numExpanded;
+    }
+
+    /**
+     * Find a path from the agent's position towards the goal. The path follows
+     * the first few edges of the best abstract path, so it might end before
+     * the goal.
+     * 
+     * @param goalId
+     *            the id of the goal location.
+     * @return a path from the current position (including it), or null if the
+     *         goal can't be reached.
+     */
+    public LinkedList<Vector2> findPath(int goalId) {
+        int startId = iState.getLocationId(iState.getAgentX(),
+                iState.getAgentY());
+        goal = goalId;
+        if (startId < 0 || goalId < 0) {
+            return null;
+        }
+        readChanges();
+
+        int startCluster = clusterOf(startId);
+        int goalCluster = clusterOf(goalId);
+        final int goalX = iState.getLocationX(goalId);
+        final int goalY = iState.getLocationY(goalId);
+
+        // Most goals are close by, and don't need the abstract graph at all
+        if (startCluster == goalCluster) {
+            searchCluster(startCluster, startId);
+            if (localCost[localIndex(goalId)] < INFINITY) {
+                return refine(startCluster, startId, goalId);
+            }
+        }
+
+        // Join the start and goal to the nodes of their clusters
+        build(startCluster);
+        build(goalCluster);
+        searchCluster(startCluster, startId);
+        startCosts = costsToNodes(startCluster, startCosts);
+        searchCluster(goalCluster, goalId);
+        goalCosts = costsToNodes(goalCluster, goalCosts);
+
+        int idLimit = iState.getIdLimit();
+        if (g.length < idLimit) {
+            g = Arrays.copyOf(g, idLimit);
+            cameFrom = Arrays.copyOf(cameFrom, idLimit);
+            visited = Arrays.copyOf(visited, idLimit);
+        }
+        open.ensureCapacity(idLimit);
+        open.clear();
+        if (++searchNumber == 0) { // The numbers wrapped around
+            Arrays.fill(visited, 0);
+            searchNumber = 1;
+        }
+
+        // A* over the abstract graph, with the start and goal joined to it
+        visited[startId] = 0;
+        relax(-1, startId, 0, goalX, goalY);
+        while (!open.isEmpty()) {
+            int u = open.poll();
+            numExpanded++;
+            if (u == goalId) {
+                return refinePath(goalId);
+            }
+            if (u == startId) {
+                int[] startNodes = nodes[startCluster];
+                for (int i = 0; i < startNodes.length; i++) {
+                    if (startCosts[i] < INFINITY) {
+                        relax(u, startNodes[i], startCosts[i], goalX, goalY);
+                    }
+                }
+            }
+
+            int k = clusterOf(u);
+            build(k);
+            int[] clusterNodes = nodes[k];
+            int n = clusterNodes.length;
+            for (int i = 0; i < n; i++) {
+                if (clusterNodes[i] != u) {
+                    continue;
+                }
+                if (partners[k][i] >= 0) {
+                    relax(u, partners[k][i], g[u] + 2, goalX, goalY);
+                }
+                for (int j = 0; j < n; j++) {
+                    int cost = costs[k][i * n + j];
+                    if (cost < INFINITY) {
+                        relax(u, clusterNodes[j], g[u] + cost, goalX, goalY);
+                    }
+                }
+                if (k == goalCluster && goalCosts[i] < INFINITY) {
+                    relax(u, goalId, g[u] + goalCosts[i], goalX, goalY);
+                }
+            }
+        }
+        return null;
+    }
+
+    /* Update a location's cost in the abstract search, if it is lower. */
+    private void relax(int from, int to, int cost, int goalX, int goalY) {
+        if (visited[to] == searchNumber && cost >= g[to]) {
+            return;
+        }
+        visited[to] = searchNumber;
+        g[to] = cost;
+        cameFrom[to] = from;
+        int h = 2 * (Math.abs(goalX - iState.getLocationX(to)) + Math
+                .abs(goalY - iState.getLocationY(to)));
+        open.put(to, ((long) (cost + h) << 32) | (Integer.MAX_VALUE - cost));
+    }
+
+    /**
+     * Turn the start of the abstract path to the goal into a path of
+     * locations.
+     */
+    private LinkedList<Vector2> refinePath(int goalId) {
+        // Follow the abstract path back from the goal, keeping the first
+        // REFINED_EDGES + 1 nodes
+        int[] abstractPath = new int[REFINED_EDGES + 1];
+        int length = 0;
+        for (int u = goalId; u >= 0; u = cameFrom[u]) {
+            System.arraycopy(abstractPath, 0, abstractPath, 1,
+                    abstractPath.length - 1);
+            abstractPath[0] = u;
+            length = Math.min(length + 1, abstractPath.length);
+        }
+
+        LinkedList<Vector2> path = new LinkedList<Vector2>();
+        path.add(iState.getLocationPosition(abstractPath[0]));
+        for (int i = 0; i + 1 < length; i++) {
+            int from = abstractPath[i];
+            int to = abstractPath[i + 1];
+            int k = clusterOf(from);
+            if (k != clusterOf(to)) { // Across an entrance
+                path.add(iState.getLocationPosition(to));
+            } else {
+                searchCluster(k, from);
+                LinkedList<Vector2> part = refine(k, from, to);
+                part.remove(); // the first location is already in the path
+                path.addAll(part);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Return the path between two locations in a cluster found by the last
+     * call to searchCluster() from the first location.
+     */
+    private LinkedList<Vector2> refine(int cluster, int from, int to) {
+        LinkedList<Vector2> path = new LinkedList<Vector2>();
+        int originX = clusterXs[cluster] << CLUSTER_BITS;
+        int originY = clusterYs[cluster] << CLUSTER_BITS;
+        for (int i = localIndex(to); i >= 0; i = localParent[i]) {
+            path.addFirst(new Vector2(originX + (i & (CLUSTER_SIZE - 1)),
+                    originY + (i >> CLUSTER_BITS)));
+        }
+        return path;
+    }
+
+    /**
+     * Read the changes to the map since the last search, and mark the
+     * clusters they affected as dirty.
+     */
+    private void readChanges() {
+        int numChanges = iState.getNumChanges();
+        for (int i = numChangesSeen; i < numChanges; i++) {
+            locationChanged(iState.getChangedId(i));
+        }
+        numChangesSeen = numChanges;
+    }
+
+    /**
+     * Build a cluster again if it is dirty. Clusters are only built when a
+     * search reaches them, since the clusters being explored change with
+     * almost every step.
+     */
+    private void build(int k) {
+        if (dirty[k]) {
+            buildCluster(k);
+            dirty[k] = false;
+        }
+    }
+
+    /**
+     * Mark the clusters affected by a change to a location as dirty: its own
+     * cluster, and the cluster across the border if it is on one.
+     */
+    private void locationChanged(int id) {
+        int x = iState.getLocationX(id);
+        int y = iState.getLocationY(id);
+        markDirty(x, y);
+        for (int d = Direction.NORTH; d <= Direction.WEST; ++d) {
+            int nx = x + Direction.DELTA_X[d];
+            int ny = y + Direction.DELTA_Y[d];
+            if ((nx >> CLUSTER_BITS) != (x >> CLUSTER_BITS)
+                    || (ny >> CLUSTER_BITS) != (y >> CLUSTER_BITS)) {
+                markDirty(nx, ny);
+            }
+        }
+    }
+
+    private void markDirty(int x, int y) {
+        int k = findCluster(x >> CLUSTER_BITS, y >> CLUSTER_BITS);
+        dirty[k] = true;
+    }
+
+    /**
+     * Return the number of a cluster, adding it if it is new.
+     */
+    private int findCluster(int clusterX, int clusterY) {
+        int k = clusterMap.get(clusterX, clusterY);
+        if (k < 0) {
+            if (numClusters == clusterXs.length) {
+                int capacity = numClusters * 2;
+                clusterXs = Arrays.copyOf(clusterXs, capacity);
+                clusterYs = Arrays.copyOf(clusterYs, capacity);
+                nodes = Arrays.copyOf(nodes, capacity);
+                partners = Arrays.copyOf(partners, capacity);
+                costs = Arrays.copyOf(costs, capacity);
+                dirty = Arrays.copyOf(dirty, capacity);
+            }
+            k = numClusters++;
+            clusterXs[k] = clusterX;
+            clusterYs[k] = clusterY;
+            nodes[k] = new int[0];
+            partners[k] = new int[0];
+            costs[k] = new int[0];
+            clusterMap.put(clusterX, clusterY, k);
+        }
+        return k;
+    }
+
+    private int clusterOf(int id) {
+        return findCluster(iState.getLocationX(id) >> CLUSTER_BITS,
+                iState.getLocationY(id) >> CLUSTER_BITS);
+    }
+
+    /**
+     * Find the entrances on a cluster's borders and the costs between them.
+     */
+    private void buildCluster(int k) {
+        int originX = clusterXs[k] << CLUSTER_BITS;
+        int originY = clusterYs[k] << CLUSTER_BITS;
+        int[] found = new int[8];
+        int[] foundPartners = new int[8];
+        int n = 0;
+
+        for (int d = Direction.NORTH; d <= Direction.WEST; ++d) {
+            // Walk along the border on side d, from one corner to the other
+            int x0 = originX;
+            int y0 = originY;
+            if (d == Direction.EAST) {
+                x0 += CLUSTER_SIZE - 1;
+            } else if (d == Direction.SOUTH) {
+                y0 += CLUSTER_SIZE - 1;
+            }
+            int stepX = (d == Direction.NORTH || d == Direction.SOUTH) ? 1 : 0;
+            int stepY = 1 - stepX;
+
+            int runStart = -1;
+            for (int i = 0; i <= CLUSTER_SIZE; i++) {
+                boolean passable = i < CLUSTER_SIZE
+                        && isOpenBorder(x0 + i * stepX, y0 + i * stepY, d);
+                if (passable && runStart < 0) {
+                    runStart = i;
+                } else if (!passable && runStart >= 0) {
+                    int runEnd = i - 1;
+                    int[] entrances;
+                    if (runEnd - runStart + 1 >= LONG_ENTRANCE) {
+                        entrances = new int[] { runStart, runEnd };
+                    } else {
+                        entrances = new int[] { (runStart + runEnd) / 2 };
+                    }
+                    for (int e : entrances) {
+                        if (n == found.length) {
+                            found = Arrays.copyOf(found, n * 2);
+                            foundPartners = Arrays.copyOf(foundPartners, n * 2);
+                        }
+                        int x = x0 + e * stepX;
+                        int y = y0 + e * stepY;
+                        found[n] = iState.getLocationId(x, y);
+                        foundPartners[n] = iState.getLocationId(x
+                                + Direction.DELTA_X[d], y
+                                + Direction.DELTA_Y[d]);
+                        n++;
+                    }
+                    runStart = -1;
+                }
+            }
+        }
+
+        nodes[k] = Arrays.copyOf(found, n);
+        partners[k] = Arrays.copyOf(foundPartners, n);
+        int[] c = new int[n * n];
+        for (int i = 0; i < n; i++) {
+            searchCluster(k, found[i]);
+            for (int j = 0; j < n; j++) {
+                c[i * n + j] = localCost[localIndex(found[j])];
+            }
+        }
+        costs[k] = c;
+    }
+
+    /**
+     * Whether a location and its neighbor in the given direction can both be
+     * moved through.
+     */
+    private boolean isOpenBorder(int x, int y, int direction) {
+        int id = iState.getLocationId(x, y);
+        return id >= 0 && iState.isSeen(id) && !iState.isObstacle(id)
+                && iState.getNeighborId(id, direction) >= 0;
+    }
+
+    /**
+     * Search a cluster breadth first from a location in it, without leaving
+     * the cluster. The costs (2 per move) and parents are left in localCost
+     * and localParent, indexed by localIndex().
+     */
+    private void searchCluster(int k, int from) {
+        Arrays.fill(localCost, INFINITY);
+        int clusterX = clusterXs[k];
+        int clusterY = clusterYs[k];
+
+        localCost[localIndex(from)] = 0;
+        localParent[localIndex(from)] = -1;
+        localQueue[0] = from;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int id = localQueue[head++];
+            int i = localIndex(id);
+            for (int d = Direction.NORTH; d <= Direction.WEST; ++d) {
+                int neighbor = iState.getNeighborId(id, d);
+                if (neighbor < 0) {
+                    continue;
+                }
+                int x = iState.getLocationX(neighbor);
+                int y = iState.getLocationY(neighbor);
+                if ((x >> CLUSTER_BITS) != clusterX
+                        || (y >> CLUSTER_BITS) != clusterY) {
+                    continue;
+                }
+                int j = localIndex(neighbor);
+                if (localCost[j] == INFINITY) {
+                    localCost[j] = localCost[i] + 2;
+                    localParent[j] = i;
+                    localQueue[tail++] = neighbor;
+                }
+            }
+        }
+    }
+
+    /* Copy the costs from the last cluster search to the nodes of a cluster. */
+    private int[] costsToNodes(int k, int[] result) {
+        int n = nodes[k].length;
+        if (result.length < n) {
+            result = new int[n];
+        }
+        for (int i = 0; i < n; i++) {
+            result[i] = localCost[localIndex(nodes[k][i])];
+        }
+        return result;
+    }
+
+    /* The index of a location within its cluster. */
+    private int localIndex(int id) {
+        return ((iState.getLocationY(id) & (CLUSTER_SIZE - 1)) << CLUSTER_BITS)
+                | (iState.getLocationX(id) & (CLUSTER_SIZE - 1));
+    }
+}
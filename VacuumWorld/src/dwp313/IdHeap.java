@@ -0,0 +1,173 @@
+/**
+ * Author:      Daniel Phang
+ * Class:       CSE431 Intelligent Agents
+ * Professor:   Jeff Heflin
+ * Date:        September 19, 2013
+ * Assignment:  Program #1
+ * Environment: Java 1.6
+ */
+
+package dwp313;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of location ids (see InternalState), used as the open set
+ * of the planner's searches. Each id has a long key, and the heap remembers
+ * where each id is, so an id's key can be changed or the id removed in
+ * O(log n) time without searching for it. Searches that compare two values
+ * pack them into one key, with the most significant value in the high bits.
+ * 
+ * @author Daniel Phang
+ * 
+ */
+public class IdHeap {
+    private int[] heap = new int[0];
+    private long[] keys = new long[0];
+
+    /* The position of each id in the heap, or -1 if it is not in the heap. */
+    private int[] index = new int[0];
+
+    private int size = 0;
+
+    /**
+     * Make room for the ids 0 up to the given number.
+     * 
+     * @param numIds
+     */
+    public void ensureCapacity(int numIds) {
+        if (index.length < numIds) {
+            int capacity = Math.max(numIds, index.length * 2);
+            int oldLength = index.length;
+            heap = Arrays.copyOf(heap, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            index = Arrays.copyOf(index, capacity);
+            Arrays.fill(index, oldLength, capacity, -1);
+        }
+    }
+
+    /**
+     * Remove every id from the heap.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            index[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int id) {
+        return index[id] >= 0;
+    }
+
+    /**
+     * @return the id with the smallest key.
+     */
+    public int peek() {
+        return heap[0];
+    }
+
+    /**
+     * @return the smallest key, or Long.MAX_VALUE if the heap is empty.
+     */
+    public long peekKey() {
+        return size > 0 ? keys[heap[0]] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Remove the id with the smallest key and return it.
+     * 
+     * @return
+     */
+    public int poll() {
+        int top = heap[0];
+        remove(top);
+        return top;
+    }
+
+    /**
+     * Add an id to the heap with the given key, or change its key if it is
+     * already there.
+     * 
+     * @param id
+     * @param key
+     */
+    public void put(int id, long key) {
+        int i = index[id];
+        if (i < 0) {
+            keys[id] = key;
+            i = size++;
+            heap[i] = id;
+            index[id] = i;
+            siftUp(i);
+        } else if (key < keys[id]) {
+            keys[id] = key;
+            siftUp(i);
+        } else {
+            keys[id] = key;
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Remove an id from the heap, if it is there.
+     * 
+     * @param id
+     */
+    public void remove(int id) {
+        int i = index[id];
+        if (i < 0) {
+            return;
+        }
+        index[id] = -1;
+        int last = heap[--size];
+        if (i < size) {
+            heap[i] = last;
+            index[last] = i;
+            siftDown(i);
+            siftUp(index[last]);
+        }
+    }
+
+    private void siftUp(int i) {
+        int id = heap[i];
+        long key = keys[id];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[heap[parent]] <= key) {
+                break;
+            }
+            heap[i] = heap[parent];
+            index[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = id;
+        index[id] = i;
+    }
+
+    private void siftDown(int i) {
+        int id = heap[i];
+        long key = keys[id];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            if (keys[heap[child]] >= key) {
+                break;
+            }
+            heap[i] = heap[child];
+            index[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = id;
+        index[id] = i;
+    }
+}
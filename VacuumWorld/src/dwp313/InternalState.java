@@ -9,15 +9,11 @@
 
 package dwp313;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.LinkedList;
 
 import vacworld.Direction;
-import vacworld.GoForward;
-import vacworld.ShutOff;
-import vacworld.SuckDirt;
-import vacworld.TurnLeft;
-import vacworld.TurnRight;
+import vacworld.VacAction;
 import vacworld.VacPercept;
 import agent.Action;
 
@@ -26,43 +22,109 @@ import agent.Action;
  * our agent to remember all locations it has explored. The agent updates an
  * instance of this class to keep track of information about new locations.
  * 
+ * The map is stored in chunks of 64 by 64 locations, with one byte of flags
+ * per location. Since the agent's positions are relative to where it started,
+ * they can be negative and the map can grow in any direction, so chunks are
+ * allocated as the agent sees locations in them, and a PositionMap finds the
+ * chunk for a position. The chunks are numbered in the order they were
+ * allocated, and each location has an id: its chunk's number times 4096 plus
+ * its offset in the chunk. The planner keeps its search state in arrays
+ * indexed by these ids, and finding a location's position or neighbors from
+ * its id only takes array reads.
+ * 
  * @author Daniel Phang
  * 
  */
 public class InternalState {
-    /* Keep track of the locations seen on the map. */
-    private final HashMap<Vector2, LocationInformation> worldMap;
+    /* Flags stored for each location. */
+    private static final byte OBSTACLE = 1;
+    private static final byte DIRTY = 2;
+    private static final byte EXPLORED = 4;
+    private static final byte SEEN = 8;
+
+    /* The size of the chunks the map is stored in. */
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int CHUNK_LOCATIONS = CHUNK_SIZE * CHUNK_SIZE;
+    private static final int ID_BITS = 2 * CHUNK_BITS;
+
+    /* Keep track of the chunks of the map, by chunk coordinates. */
+    private final PositionMap worldMap;
+
+    /*
+     * For each chunk we store its flags (indexed by the offset y * 64 + x in
+     * the chunk), its chunk coordinates, and the numbers of its four
+     * neighboring chunks (-1 if a neighbor has not been allocated).
+     */
+    private byte[][] chunks = new byte[4][];
+    private int[] chunkXs = new int[4];
+    private int[] chunkYs = new int[4];
+    private int[] adjacentChunks = new int[4 * 4];
+    private int numChunks = 0;
+
+    /* The chunk found by the last position lookup. */
+    private int lastChunkX;
+    private int lastChunkY;
+    private int lastChunk = -1;
+
+    private int numLocations = 0;
+
+    /*
+     * The frontier: the ids of the locations that have been seen but not
+     * explored, and are not known to be obstacles. These are the locations
+     * the agent still has to visit. Locations are added as they are seen, so
+     * the planner does not have to scan the whole map for them. When a
+     * location leaves the frontier it is only counted, and the array is
+     * compacted the next time the planner asks for its size.
+     */
+    private int[] frontier = new int[64];
+    private int frontierSize = 0;
+    private int numLeftFrontier = 0;
+
+    /*
+     * A log of the ids of locations that were added to the map or found to be
+     * obstacles, in order. Incremental searches keep their place in the log
+     * to find out which locations changed since they last looked. Changes are
+     * only logged once an incremental search has asked for them.
+     */
+    private boolean logChanges = false;
+    private int[] changes = new int[64];
+    private int numChanges = 0;
 
     /*
      * Other useful information such as direction, position and a few boolean
      * variables.
      */
     private int agentDirection;
-    private Vector2 agentPosition;
+    private int agentX;
+    private int agentY;
     private boolean obstacleSeen;
     private boolean feltBump;
     private boolean dirtSeen;
     private boolean turnedOff;
 
+    /*
+     * Whether the last action was to go forward. The position is updated as
+     * if the move succeeded, so a bump in the next percept means it has to be
+     * moved back (e.g. when another robot was in the way).
+     */
+    private boolean movedForward;
+
     /**
      * This construct initializes the internal state by creating a world map to
      * keep track of new locations. The agent's location is also initialized to
      * (0, 0) which is a relative position (since it doesn't know where it is).
      */
     public InternalState() {
-        worldMap = new HashMap<Vector2, LocationInformation>();
+        worldMap = new PositionMap();
         agentDirection = Direction.NORTH; // Even though this may not be the
                                           // absolute
         // direction, we need to assume a starting
         // direction
-        agentPosition = new Vector2(0, 0); // Similarly, we need to assume a
-                                           // starting
-                                           // position
-        worldMap.put(agentPosition, new LocationInformation(false)); // Put its
-                                                                     // starting
-                                                                     // location
-                                                                     // in the
-                                                                     // map
+        agentX = 0; // Similarly, we need to assume a starting position
+        agentY = 0;
+        see(agentX, agentY, false); // Put its starting location in the map
         obstacleSeen = false;
     }
 
@@ -77,14 +139,21 @@ public class InternalState {
      * @return the agent's position vector.
      */
     public Vector2 getAgentPosition() {
-        return agentPosition;
+        return new Vector2(agentX, agentY);
+    }
+
+    /**
+     * @return the x coordinate of the agent's position.
+     */
+    public int getAgentX() {
+        return agentX;
     }
 
     /**
-     * @return the world map.
+     * @return the y coordinate of the agent's position.
      */
-    public HashMap<Vector2, LocationInformation> getWorldMap() {
-        return worldMap;
+    public int getAgentY() {
+        return agentY;
     }
 
     /**
@@ -94,81 +163,431 @@ public class InternalState {
      *            a VacPercept object.
      */
     public void update(VacPercept p) {
+        update(p.getBits());
+    }
+
+    /**
+     * Update the internal state with a percept encoded as a bitmask (see
+     * VacPercept.getBits()).
+     * 
+     * @param perceptBits
+     *            a combination of the VacPercept bit constants.
+     */
+    public void update(int perceptBits) {
+        // If the last move was blocked, the agent is still where it was.
+        feltBump = (perceptBits & VacPercept.BUMP_BIT) != 0;
+        if (feltBump && movedForward) {
+            agentX -= Direction.DELTA_X[agentDirection];
+            agentY -= Direction.DELTA_Y[agentDirection];
+        }
+        movedForward = false;
+
         // Put information about current agent's position in the agent's current
         // knowledge of the world.
-        LocationInformation current;
-        if (!worldMap.containsKey(agentPosition)) {
-            current = new LocationInformation(false);
-            worldMap.put(agentPosition, current);
-        }
+        int current = see(agentX, agentY, false);
 
         // Update the location to whether it is actually dirty or not
-        dirtSeen = p.seeDirt();
-        feltBump = p.feelBump();
+        dirtSeen = (perceptBits & VacPercept.DIRT_BIT) != 0;
 
-        current = worldMap.get(agentPosition);
-        current.setDirty(dirtSeen);
-        current.setExplored(true);
+        setFlag(current, DIRTY, dirtSeen);
+        leaveFrontier(current);
+        setFlag(current, EXPLORED, true);
 
         // Check each possible location adjacent to the agent.
-        Vector2 aroundPosition;
         boolean obstacle;
         for (int i = Direction.NORTH; i <= Direction.WEST; ++i) {
-            aroundPosition = new Vector2(agentPosition.getX()
-                    + Direction.DELTA_X[i], agentPosition.getY()
-                    + Direction.DELTA_Y[i]);
-
             obstacle = false; // Assume initially that the location to be check
                               // has no obstacle.
 
             // Front location
             if (i == agentDirection) {
-                obstacleSeen = p.seeObstacle();
+                obstacleSeen = (perceptBits & VacPercept.OBSTACLE_BIT) != 0;
                 obstacle = obstacleSeen;
             }
 
-            if (!worldMap.containsKey(aroundPosition)) {
-                worldMap.put(aroundPosition, new LocationInformation(obstacle));
-            }
+            int around = see(agentX + Direction.DELTA_X[i], agentY
+                    + Direction.DELTA_Y[i], obstacle);
 
             // The agent might have seen this location (i.e it was adjacent)
             // without knowing whether there was an obstacle.
             // If it actually saw an obstacle, we need to update this
             // information.
-            if (obstacle) {
-                LocationInformation obstacleLoc = worldMap.get(aroundPosition);
-                obstacleLoc.setObstacle(obstacle);
+            if (obstacle && !isObstacle(around)) {
+                leaveFrontier(around);
+                setFlag(around, OBSTACLE, true);
+                logChange(around);
             }
         }
     }
 
-    /**
-     * Update the agent's position with a new position vector.
-     * 
-     * @param position
-     */
-    private void updatePosition(Vector2 position) {
-        this.agentPosition = position;
-    }
-
     /**
      * Update the internal state with whether a location is dirty.
      * 
-     * @param position
-     *            the position to update.
+     * @param x
+     * @param y
      * @param dirty
      *            whether the position is dirty.
      */
-    private void updateDirty(Vector2 position, boolean dirty) {
+    private void updateDirty(int x, int y, boolean dirty) {
         // Presumably the position already exists in our map (usually we first
         // update the agent with a Percept, like in the above method, which will
         // add the position to the map. But if not, we add it to the map.
-        if (!worldMap.containsKey(position)) {
-            worldMap.put(position, new LocationInformation(false));
+        setFlag(see(x, y, false), DIRTY, dirty);
+    }
+
+    private void setFlag(int id, byte flag, boolean value) {
+        if (value) {
+            chunks[id >>> ID_BITS][id & (CHUNK_LOCATIONS - 1)] |= flag;
+        } else {
+            chunks[id >>> ID_BITS][id & (CHUNK_LOCATIONS - 1)] &= ~flag;
         }
+    }
 
-        LocationInformation current = worldMap.get(position);
-        current.setDirty(dirty);
+    private byte flags(int id) {
+        return chunks[id >>> ID_BITS][id & (CHUNK_LOCATIONS - 1)];
+    }
+
+    /**
+     * Return the number of the chunk containing a position.
+     * 
+     * @param x
+     * @param y
+     * @param allocate
+     *            whether to allocate the chunk if it doesn't exist yet.
+     * @return the chunk number, or -1 if it doesn't exist and allocate is
+     *         false.
+     */
+    private int findChunk(int x, int y, boolean allocate) {
+        int chunkX = x >> CHUNK_BITS;
+        int chunkY = y >> CHUNK_BITS;
+        if (lastChunk >= 0 && chunkX == lastChunkX && chunkY == lastChunkY) {
+            return lastChunk;
+        }
+        int chunk = worldMap.get(chunkX, chunkY);
+        if (chunk < 0) {
+            if (!allocate) {
+                return -1;
+            }
+            chunk = allocateChunk(chunkX, chunkY);
+        }
+        lastChunkX = chunkX;
+        lastChunkY = chunkY;
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    /**
+     * Allocate a new chunk and link it with any neighboring chunks.
+     * 
+     * @return the number of the chunk.
+     */
+    private int allocateChunk(int chunkX, int chunkY) {
+        if (numChunks == chunks.length) {
+            int capacity = numChunks * 2;
+            chunks = Arrays.copyOf(chunks, capacity);
+            chunkXs = Arrays.copyOf(chunkXs, capacity);
+            chunkYs = Arrays.copyOf(chunkYs, capacity);
+            adjacentChunks = Arrays.copyOf(adjacentChunks, 4 * capacity);
+        }
+
+        int chunk = numChunks++;
+        chunks[chunk] = new byte[CHUNK_LOCATIONS];
+        chunkXs[chunk] = chunkX;
+        chunkYs[chunk] = chunkY;
+        worldMap.put(chunkX, chunkY, chunk);
+
+        for (int i = Direction.NORTH; i <= Direction.WEST; ++i) {
+            int neighbor = worldMap.get(chunkX + Direction.DELTA_X[i], chunkY
+                    + Direction.DELTA_Y[i]);
+            adjacentChunks[4 * chunk + i] = neighbor;
+            if (neighbor >= 0) {
+                // (i + 2) % 4 is the opposite direction
+                adjacentChunks[4 * neighbor + (i + 2) % 4] = chunk;
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Mark a location as seen, adding it to the map if it wasn't already
+     * there.
+     * 
+     * @param x
+     * @param y
+     * @param obstacle
+     *            whether a newly seen location is known to be an obstacle.
+     * @return the id of the location.
+     */
+    private int see(int x, int y, boolean obstacle) {
+        int id = (findChunk(x, y, true) << ID_BITS)
+                | ((y & CHUNK_MASK) << CHUNK_BITS) | (x & CHUNK_MASK);
+        if ((flags(id) & SEEN) == 0) {
+            setFlag(id, obstacle ? SEEN | OBSTACLE : SEEN, true);
+            numLocations++;
+            if (!obstacle) {
+                if (frontierSize == frontier.length) {
+                    frontier = Arrays.copyOf(frontier, frontierSize * 2);
+                }
+                frontier[frontierSize++] = id;
+            }
+            logChange(id);
+        }
+        return id;
+    }
+
+    private void logChange(int id) {
+        if (!logChanges) {
+            return;
+        }
+        if (numChanges == changes.length) {
+            changes = Arrays.copyOf(changes, numChanges * 2);
+        }
+        changes[numChanges++] = id;
+    }
+
+    /**
+     * Start logging changes to the map (see getNumChanges()). Nothing is
+     * logged until this is called, since a map that is never searched
+     * incrementally doesn't need the log.
+     */
+    public void logChanges() {
+        logChanges = true;
+    }
+
+    /**
+     * @return the number of changes logged so far. A change is logged when a
+     *         location is added to the map or found to be an obstacle.
+     */
+    public int getNumChanges() {
+        return numChanges;
+    }
+
+    /**
+     * @param index
+     *            an index from 0 up to getNumChanges().
+     * @return the id of the location that changed.
+     */
+    public int getChangedId(int index) {
+        return changes[index];
+    }
+
+    /**
+     * Count a location as leaving the frontier, if it is in the frontier. This
+     * has to be called before its flags change. Once half of the frontier
+     * array has left, it is compacted.
+     * 
+     * @param id
+     */
+    private void leaveFrontier(int id) {
+        if (isFrontier(id) && ++numLeftFrontier > frontierSize / 2) {
+            // The location is still in the frontier, so it is kept for now
+            // and counted again.
+            compactFrontier();
+            numLeftFrontier = 1;
+        }
+    }
+
+    /**
+     * Remove the locations that have left the frontier from the frontier
+     * array, keeping the rest in order.
+     */
+    private void compactFrontier() {
+        int size = 0;
+        for (int i = 0; i < frontierSize; i++) {
+            if (isFrontier(frontier[i])) {
+                frontier[size++] = frontier[i];
+            }
+        }
+        frontierSize = size;
+        numLeftFrontier = 0;
+    }
+
+    /**
+     * @return the number of locations in the frontier, i.e. the locations that
+     *         have been seen but not explored and are not obstacles.
+     */
+    public int getFrontierSize() {
+        if (numLeftFrontier > 0) {
+            compactFrontier();
+        }
+        return frontierSize;
+    }
+
+    /**
+     * @param id
+     *            the id of a location.
+     * @return whether the location is in the frontier.
+     */
+    public boolean isFrontier(int id) {
+        return (flags(id) & (SEEN | EXPLORED | OBSTACLE)) == SEEN;
+    }
+
+    /**
+     * @param index
+     *            an index from 0 up to getFrontierSize().
+     * @return the id of the location at that index in the frontier. The order
+     *         of the frontier changes as locations are removed from it.
+     */
+    public int getFrontierId(int index) {
+        return frontier[index];
+    }
+
+    /**
+     * Return the location that was seen most recently out of some locations in
+     * the frontier. The frontier is kept in the order the locations were seen,
+     * so this searches it from the end.
+     * 
+     * @param ids
+     *            the ids of locations in the frontier.
+     * @param count
+     *            the number of ids.
+     * @return the id of the newest location.
+     */
+    public int getNewestInFrontier(int[] ids, int count) {
+        for (int i = frontierSize - 1; i >= 0; i--) {
+            for (int j = 0; j < count; j++) {
+                if (frontier[i] == ids[j]) {
+                    return ids[j];
+                }
+            }
+        }
+        return ids[0];
+    }
+
+    /**
+     * @return the number of locations in the map.
+     */
+    public int getNumLocations() {
+        return numLocations;
+    }
+
+    /**
+     * @return a number larger than any location id. Not every id below it
+     *         belongs to a location that has been seen.
+     */
+    public int getIdLimit() {
+        return numChunks << ID_BITS;
+    }
+
+    /**
+     * Return the id of a location, or -1 if it has not been seen.
+     * 
+     * @param position
+     * @return
+     */
+    public int getLocationId(Vector2 position) {
+        return getLocationId(position.getX(), position.getY());
+    }
+
+    /**
+     * Return the id of a location, or -1 if it has not been seen.
+     * 
+     * @param x
+     * @param y
+     * @return
+     */
+    public int getLocationId(int x, int y) {
+        int chunk = findChunk(x, y, false);
+        if (chunk < 0) {
+            return -1;
+        }
+        int id = (chunk << ID_BITS) | ((y & CHUNK_MASK) << CHUNK_BITS)
+                | (x & CHUNK_MASK);
+        return (flags(id) & SEEN) != 0 ? id : -1;
+    }
+
+    /**
+     * @param id
+     *            the id of a location.
+     * @return the x coordinate of the location.
+     */
+    public int getLocationX(int id) {
+        return (chunkXs[id >>> ID_BITS] << CHUNK_BITS) | (id & CHUNK_MASK);
+    }
+
+    /**
+     * @param id
+     *            the id of a location.
+     * @return the y coordinate of the location.
+     */
+    public int getLocationY(int id) {
+        return (chunkYs[id >>> ID_BITS] << CHUNK_BITS)
+                | ((id >>> CHUNK_BITS) & CHUNK_MASK);
+    }
+
+    /**
+     * @param id
+     *            the id of a location.
+     * @return the position of the location.
+     */
+    public Vector2 getLocationPosition(int id) {
+        return new Vector2(getLocationX(id), getLocationY(id));
+    }
+
+    /**
+     * Return the id of the location next to a location in the given
+     * direction, if it has been seen and is not known to be an obstacle. This
+     * is the id based version of neighbors().
+     * 
+     * @param id
+     *            the id of a location.
+     * @param direction
+     *            a direction number.
+     * @return the id of the neighbor, or -1 if it can't be moved to.
+     */
+    public int getNeighborId(int id, int direction) {
+        int x = (id & CHUNK_MASK) + Direction.DELTA_X[direction];
+        int y = ((id >>> CHUNK_BITS) & CHUNK_MASK)
+                + Direction.DELTA_Y[direction];
+        int chunk = id >>> ID_BITS;
+        if (((x | y) & ~CHUNK_MASK) != 0) { // In the next chunk
+            chunk = adjacentChunks[4 * chunk + direction];
+            if (chunk < 0) {
+                return -1;
+            }
+        }
+        int neighbor = (chunk << ID_BITS) | ((y & CHUNK_MASK) << CHUNK_BITS)
+                | (x & CHUNK_MASK);
+        if ((flags(neighbor) & (SEEN | OBSTACLE)) != SEEN) {
+            return -1;
+        }
+        return neighbor;
+    }
+
+    /**
+     * @param id
+     *            the id of a location.
+     * @return whether the location has been seen.
+     */
+    public boolean isSeen(int id) {
+        return (flags(id) & SEEN) != 0;
+    }
+
+    /**
+     * @param id
+     *            the id of a location.
+     * @return whether the location is an obstacle.
+     */
+    public boolean isObstacle(int id) {
+        return (flags(id) & OBSTACLE) != 0;
+    }
+
+    /**
+     * @param id
+     *            the id of a location.
+     * @return whether the location has been explored.
+     */
+    public boolean isExplored(int id) {
+        return (flags(id) & EXPLORED) != 0;
+    }
+
+    /**
+     * @param id
+     *            the id of a location.
+     * @return whether the location is dirty.
+     */
+    public boolean isDirty(int id) {
+        return (flags(id) & DIRTY) != 0;
     }
 
     /**
@@ -179,9 +598,21 @@ public class InternalState {
      * @return
      */
     public boolean isLocationDirty(Vector2 position) {
-        LocationInformation loc = worldMap.get(position);
-        if (loc != null) {
-            return loc.isDirty();
+        return isLocationDirty(position.getX(), position.getY());
+    }
+
+    /**
+     * Return whether a location is dirty. If it has not been seen yet, it is
+     * assumed to be dirty.
+     * 
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean isLocationDirty(int x, int y) {
+        int id = getLocationId(x, y);
+        if (id >= 0) {
+            return isDirty(id);
         } else {
             return true;
         }
@@ -195,9 +626,9 @@ public class InternalState {
      * @return
      */
     public boolean isLocationObstacle(Vector2 position) {
-        LocationInformation loc = worldMap.get(position);
-        if (loc != null) {
-            return loc.isObstacle();
+        int id = getLocationId(position);
+        if (id >= 0) {
+            return isObstacle(id);
         } else {
             return false;
         }
@@ -212,23 +643,23 @@ public class InternalState {
      * @return
      */
     public boolean isLocationExplored(Vector2 position) {
-        LocationInformation loc = worldMap.get(position);
-        if (loc != null) {
-            return loc.isExplored();
+        int id = getLocationId(position);
+        if (id >= 0) {
+            return isExplored(id);
         } else {
             return false;
         }
     }
 
     /**
-     * Return whether a location has been seen (i.e. it exists in the worldMap
-     * HashMap).
+     * Return whether a location has been seen (i.e. it exists in the world
+     * map).
      * 
      * @param position
      * @return
      */
     public boolean isLocationSeen(Vector2 position) {
-        return worldMap.containsKey(position);
+        return getLocationId(position) >= 0;
     }
 
     /**
@@ -265,17 +696,18 @@ public class InternalState {
      */
     public LinkedList<Vector2> neighbors(Vector2 position) {
         LinkedList<Vector2> actualNeighbors = new LinkedList<Vector2>();
+        int id = getLocationId(position);
+        if (id < 0) {
+            return actualNeighbors;
+        }
 
         // Iterate through all potential neighbors, but only add them to our
-        // linked list if they
-        // aren't known to be obstacles
-        Vector2 neighbor;
+        // linked list if they aren't known to be obstacles
+        int neighbor;
         for (int i = Direction.NORTH; i <= Direction.WEST; ++i) {
-            neighbor = new Vector2(position.getX() + Direction.DELTA_X[i],
-                    position.getY() + Direction.DELTA_Y[i]);
-
-            if (worldMap.containsKey(neighbor) && !isLocationObstacle(neighbor)) {
-                actualNeighbors.add(neighbor);
+            neighbor = getNeighborId(id, i);
+            if (neighbor >= 0) {
+                actualNeighbors.add(getLocationPosition(neighbor));
             }
         }
 
@@ -290,41 +722,35 @@ public class InternalState {
      * @param next
      */
     public void update(Action next) {
-        if (next instanceof SuckDirt) { // If the pending action was to suck
-                                        // dirt, update the current location's
-                                        // dirtiness.
-            updateDirty(agentPosition, false);
-        } else if (next instanceof GoForward && !isFeltBump()) { // Change the
-                                                                 // internal
-                                                                 // position if
-                                                                 // the agent
-                                                                 // went
-                                                                 // forward. For
-                                                                 // completeness,
-                                                                 // we only do
-                                                                 // this if it
-                                                                 // didn't feel
-                                                                 // a bump
-                                                                 // (though for
-                                                                 // this agent,
-                                                                 // it will
-                                                                 // never feel a
-                                                                 // bump).
-            updatePosition(Vector2.add(agentPosition,
-                    Vector2.directionToVector(agentDirection)));
-        } else if (next instanceof TurnLeft) { // For turns, change the
-                                               // direction appropriately.
+        switch (VacAction.opcodeOf(next)) {
+        case VacAction.SUCK_DIRT: // If the pending action was to suck dirt,
+                                  // update the current location's dirtiness.
+            updateDirty(agentX, agentY, false);
+            break;
+        case VacAction.GO_FORWARD: // Change the internal position as if the
+                                   // agent went forward. If it was blocked, the
+                                   // next percept has a bump and the move is
+                                   // undone.
+            agentX += Direction.DELTA_X[agentDirection];
+            agentY += Direction.DELTA_Y[agentDirection];
+            movedForward = true;
+            break;
+        case VacAction.TURN_LEFT: // For turns, change the direction
+                                  // appropriately.
             --agentDirection;
             if (agentDirection < Direction.NORTH) {
                 agentDirection = Direction.WEST;
             }
-        } else if (next instanceof TurnRight) {
+            break;
+        case VacAction.TURN_RIGHT:
             ++agentDirection;
             if (agentDirection > Direction.WEST) {
                 agentDirection = Direction.NORTH;
             }
-        } else if (next instanceof ShutOff) {
+            break;
+        case VacAction.SHUT_OFF:
             turnedOff = true;
+            break;
         }
     }
 
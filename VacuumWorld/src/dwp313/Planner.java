@@ -9,15 +9,10 @@
 
 package dwp313;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.Map.Entry;
-import java.util.PriorityQueue;
-import java.util.Set;
 
+import vacworld.Direction;
 import vacworld.GoForward;
 import vacworld.ShutOff;
 import vacworld.SuckDirt;
@@ -38,9 +33,43 @@ import agent.Action;
  * 
  */
 public class Planner {
+    /*
+     * The ways the planner can find paths (see setPathSearch()). A_STAR picks
+     * the unexplored location that looks closest and then searches for a path
+     * to it from scratch whenever the plan changes. D_STAR_LITE picks the
+     * location the same way, but keeps its search between plans and repairs
+     * it when the map changes, and keeps the rest of the plan when dirt is
+     * found along the way. NEAREST_UNEXPLORED searches outwards from the agent
+     * until it reaches an unexplored location, which finds the location that
+     * is actually cheapest to reach and the path to it at once. HIERARCHICAL
+     * picks the location like A_STAR, but finds the path over an abstract
+     * graph of the entrances between clusters of the map (see
+     * HierarchicalSearch), which is much cheaper in very large rooms.
+     * JUMP_POINT is like A_STAR, but finds the path with a jump point search
+     * (see findJumpPath()), which finds paths as cheap as A*'s while opening
+     * far fewer states in open rooms.
+     */
+    public static final int A_STAR = 0;
+    public static final int D_STAR_LITE = 1;
+    public static final int NEAREST_UNEXPLORED = 2;
+    public static final int HIERARCHICAL = 3;
+    public static final int JUMP_POINT = 4;
+
+    /* Names of the path searches, e.g. for choosing one on the command line. */
+    public static final String[] PATH_SEARCH_NAMES = { "astar", "dstar",
+            "nearest", "hpa", "jps" };
+
     /* The action decider uses the agent's internal state to make decisions. */
     InternalState iState;
 
+    /*
+     * The path search to use, and the D* Lite or hierarchical search if it is
+     * used.
+     */
+    private int pathSearch = NEAREST_UNEXPLORED;
+    private DStarLite dStarLite;
+    private HierarchicalSearch hierarchicalSearch;
+
     /*
      * The plan holds any currently queued actions that the agent may decide to
      * take.
@@ -58,6 +87,50 @@ public class Planner {
         this.plan = new LinkedList<Action>();
     }
 
+    /**
+     * Choose how paths are found.
+     * 
+     * @param pathSearch
+     *            A_STAR, D_STAR_LITE, NEAREST_UNEXPLORED, HIERARCHICAL or
+     *            JUMP_POINT.
+     */
+    public void setPathSearch(int pathSearch) {
+        if (pathSearch < 0 || pathSearch >= PATH_SEARCH_NAMES.length) {
+            throw new IllegalArgumentException("Unknown path search: "
+                    + pathSearch);
+        }
+        this.pathSearch = pathSearch;
+        if (pathSearch == D_STAR_LITE && dStarLite == null) {
+            dStarLite = new DStarLite(iState);
+        }
+        if (pathSearch == HIERARCHICAL && hierarchicalSearch == null) {
+            hierarchicalSearch = new HierarchicalSearch(iState);
+        }
+    }
+
+    /**
+     * @return the path search in use.
+     */
+    public int getPathSearch() {
+        return pathSearch;
+    }
+
+    /**
+     * Return the path search with the given name (see PATH_SEARCH_NAMES), or
+     * -1 if there is none.
+     * 
+     * @param name
+     * @return
+     */
+    public static int getPathSearch(String name) {
+        for (int i = 0; i < PATH_SEARCH_NAMES.length; i++) {
+            if (PATH_SEARCH_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Decides what action the agent should take by looking at its internal
      * state and returning an action.
@@ -74,7 +147,9 @@ public class Planner {
         // For example, the agent might have been moving to a location but now
         // saw some dirt on the way, or maybe an obstacle (if it's plan was
         // based on the assumption that the obstacle wasn't there before.
-        if (iState.isObstacleSeen() || iState.isDirtSeen()
+        if (pathSearch == D_STAR_LITE) {
+            repairPlan();
+        } else if (iState.isObstacleSeen() || iState.isDirtSeen()
                 || iState.isFeltBump()) {
             plan.clear();
         }
@@ -97,6 +172,34 @@ public class Planner {
         return next;
     }
 
+    /**
+     * Changes the current plan for what was just seen, without starting over.
+     * If an obstacle was seen or a bump felt, the path to the same goal is
+     * repaired. If dirt was found on the way, sucking it up is added to the
+     * front of the plan and the rest of the route is kept. This is used with
+     * D_STAR_LITE.
+     */
+    private void repairPlan() {
+        if (plan.isEmpty()) {
+            return;
+        }
+
+        if (iState.isObstacleSeen() || iState.isFeltBump()) {
+            plan.clear();
+            int goal = dStarLite.getGoal();
+            if (goal >= 0 && !iState.isExplored(goal)
+                    && !iState.isObstacle(goal)) {
+                addPathToPlan(dStarLite.findPath());
+            }
+        }
+
+        // If the plan had to be dropped, the new plan will start by sucking
+        // up the dirt.
+        if (iState.isDirtSeen() && !plan.isEmpty()) {
+            plan.addFirst(SuckDirt.INSTANCE);
+        }
+    }
+
     /**
      * This builds a queue of actions an agent should take (i.e a plan)
      */
@@ -105,7 +208,7 @@ public class Planner {
         if (iState.isLocationDirty(position)) { // If location is dirty, the
                                                 // plan is simply to suck the
                                                 // dirt up
-            plan.add(new SuckDirt());
+            plan.add(SuckDirt.INSTANCE);
         } else {
             buildMovementPlan();
         }
@@ -113,7 +216,7 @@ public class Planner {
         // If a plan is empty, presumably there was nothing to do (e.g no
         // movement plan), so we're done.
         if (plan.isEmpty()) {
-            plan.add(new ShutOff());
+            plan.add(ShutOff.INSTANCE);
         }
     }
 
@@ -128,10 +231,24 @@ public class Planner {
      * This uses heuristics to do both parts.
      */
     private void buildMovementPlan() {
+        if (pathSearch == NEAREST_UNEXPLORED) {
+            // Both steps are done by one search. If it finds nothing, we are
+            // done exploring.
+            addPathToPlan(findNearestUnexplored());
+            return;
+        }
+
         // Find an unexplored location to move to.
         // Note that this method tries to find the closest position based on a
-        // heuristic (turn cost and Manhattan distance).
-        final Vector2 unexplored = findUnexploredPosition();
+        // heuristic (turn cost and Manhattan distance). The hierarchical
+        // search keeps its goal until it gets there.
+        Vector2 unexplored;
+        if (pathSearch == HIERARCHICAL && hierarchicalSearch.getGoal() >= 0) {
+            unexplored = iState.getLocationPosition(hierarchicalSearch
+                    .getGoal());
+        } else {
+            unexplored = findUnexploredPosition();
+        }
 
         // All unexplored locations exhausted, we are done exploring all
         // squares so simply return
@@ -139,9 +256,36 @@ public class Planner {
             return;
         }
 
-        // Use an A* search to find the best path from the current position to
-        // the unexplored position.
-        LinkedList<Vector2> path = findPath(unexplored);
+        // Use an A* search (or D* Lite, or the hierarchical search) to find
+        // the best path from the current position to the unexplored position.
+        LinkedList<Vector2> path;
+        if (pathSearch == D_STAR_LITE) {
+            dStarLite.setGoal(iState.getLocationId(unexplored));
+            path = dStarLite.findPath();
+        } else if (pathSearch == HIERARCHICAL) {
+            // The path may stop short of the location; the rest is found
+            // when the plan runs out.
+            path = hierarchicalSearch.findPath(iState
+                    .getLocationId(unexplored));
+        } else if (pathSearch == JUMP_POINT) {
+            path = findJumpPath(unexplored);
+        } else {
+            path = findPath(unexplored);
+        }
+        addPathToPlan(path);
+    }
+
+    /**
+     * Adds the turns and moves that follow a path to the plan.
+     * 
+     * @param path
+     *            a path starting at the agent's position, or null if there is
+     *            no path (then nothing is added).
+     */
+    private void addPathToPlan(LinkedList<Vector2> path) {
+        if (path == null) {
+            return;
+        }
 
         // First element in the path is the starting location, so we can remove
         // it
@@ -177,18 +321,18 @@ public class Planner {
                     diff = diff + 4;
                 }
                 if (diff == 1) {
-                    plan.add(new TurnRight());
+                    plan.add(TurnRight.INSTANCE);
                 } else if (diff == 2) {
-                    plan.add(new TurnRight());
-                    plan.add(new TurnRight());
+                    plan.add(TurnRight.INSTANCE);
+                    plan.add(TurnRight.INSTANCE);
                 } else if (diff == 3) { // Turn left to avoid having to turn
                                         // right three times
-                    plan.add(new TurnLeft());
+                    plan.add(TurnLeft.INSTANCE);
                 }
             }
 
             // Finally, move forward.
-            plan.add(new GoForward());
+            plan.add(GoForward.INSTANCE);
 
             // Go to the next position and direction in the path
             current = next;
@@ -206,186 +350,509 @@ public class Planner {
      * @return a Vector2 representing an unexplored position. If no unexplored
      *         position is found, return null.
      */
-    private Vector2 findUnexploredPosition() {
-        // World map and pair variables
-        final HashMap<Vector2, LocationInformation> map = iState.getWorldMap();
-        Entry<Vector2, LocationInformation> pair;
+    Vector2 findUnexploredPosition() {
+        final int agentX = iState.getAgentX();
+        final int agentY = iState.getAgentY();
+        final int agentDirection = iState.getAgentDirection();
 
         int lowestCost = Integer.MAX_VALUE; // Lowest cost initialized to the
                                             // maximum value possible
         int cost;
-        Vector2 lowestCostPosition = null;
-
-        // Iterate through the map and find the lowest cost position using a
-        // heuristic
-        Iterator<Entry<Vector2, LocationInformation>> it = map.entrySet()
-                .iterator();
-        Vector2 pos;
-
-        while (it.hasNext()) {
-            pair = it.next();
-            pos = pair.getKey();
-            if (!iState.isLocationExplored(pos)
-                    && !iState.isLocationObstacle(pos)) { // We need both
-                                                          // conditions because
-                                                          // obstacle positions
-                                                          // are treated as
-                                                          // unexplored by the
-                                                          // internal state.
-                cost = Heuristics.estimateCost(iState.getAgentPosition(), pos,
-                        iState.getAgentDirection());
-
-                if (cost < lowestCost) {
-                    lowestCost = cost;
-                    lowestCostPosition = pair.getKey();
-                }
+        int lowestCostId = -1;
+
+        // Iterate through the frontier (the locations that are seen but
+        // unexplored and not obstacles) and find the lowest cost position
+        // using a heuristic
+        int frontierSize = iState.getFrontierSize();
+        for (int i = 0; i < frontierSize; i++) {
+            int id = iState.getFrontierId(i);
+            cost = Heuristics.estimateCost(iState.getLocationX(id) - agentX,
+                    iState.getLocationY(id) - agentY, agentDirection);
+
+            // Ties go to the location seen most recently, which comes later
+            // in the frontier
+            if (cost <= lowestCost) {
+                lowestCost = cost;
+                lowestCostId = id;
             }
-
         }
 
-        return lowestCostPosition;
+        return lowestCostId >= 0 ? iState.getLocationPosition(lowestCostId)
+                : null;
     }
 
     /**
-     * Performs a slightly modified A star search to find the shortest known
-     * path between the current position and the given goal position. This uses
-     * the specific heuristic given in the Heuristics class.
+     * Performs an A star search to find the cheapest known path between the
+     * current position and the given goal position. This uses the specific
+     * heuristic given in the Heuristics class.
+     * 
+     * The search is over the agent's states, i.e. a location and the direction
+     * faced there, with the same costs as VacuumWorld: moving forward costs 2
+     * and turning left or right costs 1. So the path found needs the fewest
+     * moves and turns, not only the fewest moves. The state of location id
+     * facing direction d is numbered 4 * id + d, so the scores and parents are
+     * kept in arrays that are reused between searches, and the open set is a
+     * binary heap of state numbers that supports decreasing a score in place.
      * 
      * @param goal
-     * @return
+     * @return the path from the current position to the goal (including both),
+     *         or null if no path was found.
      */
-    private LinkedList<Vector2> findPath(Vector2 goal) {
-        // Get start position and direction
-        Vector2 start = iState.getAgentPosition();
-        int currentDirection = iState.getAgentDirection();
+    LinkedList<Vector2> findPath(Vector2 goal) {
+        int goalId = iState.getLocationId(goal);
+        int startId = iState.getLocationId(iState.getAgentX(),
+                iState.getAgentY());
+        if (goalId < 0 || startId < 0) {
+            return null;
+        }
+        final int goalX = goal.getX();
+        final int goalY = goal.getY();
+
+        beginSearch(4 * iState.getIdLimit());
+
+        // Add the start state to the open set
+        int start = 4 * startId + iState.getAgentDirection();
+        g[start] = 0;
+        cameFrom[start] = -1;
+        visited[start] = searchNumber;
+        open.put(start, priority(0, Heuristics.estimateCost(goalX
+                - iState.getAgentX(), goalY - iState.getAgentY(),
+                iState.getAgentDirection())));
 
-        // Tentative G score
-        int tentativeG;
-
-        // Allows us to build the optimal path later
-        HashMap<Vector2, Vector2> cameFrom = new HashMap<Vector2, Vector2>();
-
-        // f and g scores as HashMap data structures
-        final HashMap<Vector2, Integer> g = new HashMap<Vector2, Integer>();
-        final HashMap<Vector2, Integer> f = new HashMap<Vector2, Integer>();
-
-        // Initialize the f and g scores of each position in the worldMap to 0
-        HashMap<Vector2, LocationInformation> worldMap = iState.getWorldMap();
-        Iterator<Entry<Vector2, LocationInformation>> it = worldMap.entrySet()
-                .iterator();
-        while (it.hasNext()) {
-            Vector2 pos = it.next().getKey();
-            f.put(pos, 0);
-            g.put(pos, 0);
-        }
-
-        // Open and closed sets. Note that the open set uses a priority queue on
-        // f-scores.
-        PriorityQueue<Vector2> open = new PriorityQueue<Vector2>(11,
-                new Comparator<Vector2>() { // This comparator ensures the
-                                            // priority queue is sorted by
-                                            // lowest f values.
-                    public int compare(Vector2 a, Vector2 b) {
-                        return f.get(a) - f.get(b);
+        while (!open.isEmpty()) {
+            int current = open.poll(); // This is always the lowest f-cost
+                                       // value
+            numExpanded++;
+            int id = current >> 2;
+            int direction = current & 3;
+
+            // Goal reached (facing any direction), construct the path
+            if (id == goalId) {
+                return constructPath(current);
+            }
+
+            // The next states are going forward, or turning on the spot
+            for (int i = 0; i < 3; i++) {
+                int next;
+                int nextId = id;
+                int nextDirection = direction;
+                int cost;
+                if (i == 0) {
+                    nextId = iState.getNeighborId(id, direction);
+                    if (nextId < 0) {
+                        continue;
                     }
-                });
+                    cost = MOVE_COST;
+                } else {
+                    nextDirection = TURNED[i][direction];
+                    cost = TURN_COST;
+                }
+                next = 4 * nextId + nextDirection;
 
-        Set<Vector2> closed = new HashSet<Vector2>();
-        g.put(start, 0);
-        f.put(start,
-                g.get(start)
-                        + Heuristics
-                                .estimateCost(start, goal, currentDirection));
+                // The heuristic is consistent, so a state that has been
+                // reached can only be improved while it is still open.
+                int tentativeG = g[current] + cost;
+                if (visited[next] == searchNumber && tentativeG >= g[next]) {
+                    continue;
+                }
+
+                // Update the appropriate data structures with new values if a
+                // better path was found.
+                visited[next] = searchNumber;
+                cameFrom[next] = current;
+                g[next] = tentativeG;
+                open.put(next, priority(tentativeG, Heuristics.estimateCost(
+                        goalX - iState.getLocationX(nextId), goalY
+                                - iState.getLocationY(nextId), nextDirection)));
+            }
+        }
+
+        // No path was found, return null
+        return null;
+    }
+
+    /**
+     * Finds the same kind of path as findPath(), with a jump point search
+     * (Harabor and Grastien, 2011) adapted to moving in four directions with
+     * turn costs.
+     * 
+     * Most states A* opens in an open room are on paths that are as good as
+     * each other, differing only in where the agent turns. Instead of stepping
+     * one location at a time, this search goes straight from a state until it
+     * reaches a jump point: the goal, a location where a wall beside it ends
+     * (so a new way opens up to the side), or a location from which going
+     * straight to one side reaches one of those. Only the jump points are
+     * opened, and from each the search turns to face each way it could go
+     * next and jumps again. A jump costs its turns plus 2 for each location
+     * passed, so the path found is as cheap as the one A* finds, although it
+     * may turn at different locations.
+     * 
+     * @param goal
+     * @return the path from the current position to the goal (including both),
+     *         or null if no path was found.
+     */
+    LinkedList<Vector2> findJumpPath(Vector2 goal) {
+        int goalId = iState.getLocationId(goal);
+        int startId = iState.getLocationId(iState.getAgentX(),
+                iState.getAgentY());
+        if (goalId < 0 || startId < 0) {
+            return null;
+        }
+        final int goalX = goal.getX();
+        final int goalY = goal.getY();
 
-        // Linked List to keep track of neighbors, as well as Vector2 elements
-        // for the neighbor and current node being expanded.
-        LinkedList<Vector2> neighbors;
-        Vector2 neighbor;
-        Vector2 current;
+        beginSearch(4 * iState.getIdLimit());
 
-        // Add the start node to the open set
-        open.add(start);
+        int start = 4 * startId + iState.getAgentDirection();
+        g[start] = 0;
+        cameFrom[start] = -1;
+        visited[start] = searchNumber;
+        open.put(start, priority(0, Heuristics.estimateCost(goalX
+                - iState.getAgentX(), goalY - iState.getAgentY(),
+                iState.getAgentDirection())));
 
         while (!open.isEmpty()) {
-            current = open.remove(); // This is always the lowest f-cost value
-                                     // since open is a priority queue
+            int current = open.poll();
+            numExpanded++;
+            int id = current >> 2;
+            int direction = current & 3;
 
-            // Goal state reached, contruct the path
-            if (current.equals(goal)) {
-                return constructPath(cameFrom, goal);
+            if (id == goalId) {
+                return constructJumpPath(current);
             }
 
-            // Move current to the closed set
-            open.remove(current);
-            closed.add(current);
-
-            // Look at all neighbors of the current position
-            neighbors = iState.neighbors(current);
-            Iterator<Vector2> it2 = neighbors.iterator();
-            while (it2.hasNext()) {
-                neighbor = it2.next();
-
-                // Compute the direction between the neighbor and
-                // current node being expanded
-                currentDirection = Vector2.vectorToDirection(Vector2.sub(
-                        neighbor, current));
-
-                tentativeG = g.get(current)
-                        + InternalState.adjacentCost(current, neighbor,
-                                currentDirection);
-                if (closed.contains(neighbor) && tentativeG >= g.get(neighbor)) {
+            // Jump ahead, to the right and to the left, and also behind at
+            // the start. Going back the way the search came is never cheaper.
+            int numJumps = cameFrom[current] < 0 ? 4 : 3;
+            for (int i = 0; i < numJumps; i++) {
+                int nextDirection = (direction + JUMP_TURNS[i]) & 3;
+                int nextId = jump(id, nextDirection, goalId);
+                if (nextId < 0) {
                     continue;
                 }
+                int distance = Math.abs(iState.getLocationX(nextId)
+                        - iState.getLocationX(id))
+                        + Math.abs(iState.getLocationY(nextId)
+                                - iState.getLocationY(id));
+                int next = 4 * nextId + nextDirection;
+
+                int tentativeG = g[current] + TURN_COST * JUMP_TURN_COSTS[i]
+                        + MOVE_COST * distance;
+                if (visited[next] == searchNumber && tentativeG >= g[next]) {
+                    continue;
+                }
+                visited[next] = searchNumber;
+                cameFrom[next] = current;
+                g[next] = tentativeG;
+                open.put(next, priority(tentativeG, Heuristics.estimateCost(
+                        goalX - iState.getLocationX(nextId), goalY
+                                - iState.getLocationY(nextId), nextDirection)));
+            }
+        }
+        return null;
+    }
+
+    /*
+     * The directions findJumpPath() jumps in, relative to the direction faced
+     * (ahead, right, left and behind), and the turns needed to face them.
+     */
+    private static final int[] JUMP_TURNS = { 0, 1, 3, 2 };
+    private static final int[] JUMP_TURN_COSTS = { 0, 1, 1, 2 };
+
+    /**
+     * Goes straight from a location until it reaches a jump point (see
+     * findJumpPath()).
+     * 
+     * @param id
+     *            the location to start from.
+     * @param direction
+     *            the direction to go in.
+     * @param goalId
+     * @return the id of the jump point, or -1 if a wall is reached first.
+     */
+    private int jump(int id, int direction, int goalId) {
+        int right = (direction + 1) & 3;
+        int left = (direction + 3) & 3;
+        int current = id;
+        while (true) {
+            int next = iState.getNeighborId(current, direction);
+            if (next < 0) {
+                return -1;
+            }
+            if (next == goalId) {
+                return next;
+            }
+
+            // A wall beside the path ends here
+            if ((iState.getNeighborId(current, right) < 0 && iState
+                    .getNeighborId(next, right) >= 0)
+                    || (iState.getNeighborId(current, left) < 0 && iState
+                            .getNeighborId(next, left) >= 0)) {
+                return next;
+            }
+
+            // Going straight to one side reaches a jump point
+            if (jumpAside(next, right, goalId) >= 0
+                    || jumpAside(next, left, goalId) >= 0) {
+                return next;
+            }
+            current = next;
+        }
+    }
+
+    /**
+     * Jumps from a location to the goal or the end of a wall beside it,
+     * without looking aside, and returns where it stops (or -1 at a wall).
+     * Every location on the way jumps to the same place, and the same lines
+     * are looked along from many jumps, so the result is remembered for each
+     * location passed and each state is only gone through once in a search.
+     */
+    private int jumpAside(int id, int direction, int goalId) {
+        int right = (direction + 1) & 3;
+        int left = (direction + 3) & 3;
+        int result;
+        int current = id;
+        while (true) {
+            int state = 4 * current + direction;
+            if (jumpVisited[state] == searchNumber) {
+                result = jumpedTo[state];
+                break;
+            }
+            int next = iState.getNeighborId(current, direction);
+            if (next < 0 || next == goalId
+                    || (iState.getNeighborId(current, right) < 0 && iState
+                            .getNeighborId(next, right) >= 0)
+                    || (iState.getNeighborId(current, left) < 0 && iState
+                            .getNeighborId(next, left) >= 0)) {
+                result = next;
+                break;
+            }
+            current = next;
+        }
+
+        // Remember the result for the locations passed
+        for (int passed = id; passed != current; passed = iState
+                .getNeighborId(passed, direction)) {
+            jumpVisited[4 * passed + direction] = searchNumber;
+            jumpedTo[4 * passed + direction] = result;
+        }
+        jumpVisited[4 * current + direction] = searchNumber;
+        jumpedTo[4 * current + direction] = result;
+        return result;
+    }
+
+    /**
+     * Constructs the path found by findJumpPath() by following the parent of
+     * each jump point back to the start, filling in the locations passed on
+     * each jump.
+     * 
+     * @param goal
+     *            the last state in the path.
+     * @return
+     */
+    private LinkedList<Vector2> constructJumpPath(int goal) {
+        LinkedList<Vector2> p = new LinkedList<Vector2>();
+        p.addFirst(iState.getLocationPosition(goal >> 2));
+        for (int state = goal; cameFrom[state] >= 0; state = cameFrom[state]) {
+            int from = cameFrom[state] >> 2;
+            int x = iState.getLocationX(state >> 2);
+            int y = iState.getLocationY(state >> 2);
+            int fromX = iState.getLocationX(from);
+            int fromY = iState.getLocationY(from);
+            while (x != fromX || y != fromY) {
+                x += Integer.signum(fromX - x);
+                y += Integer.signum(fromY - y);
+                p.addFirst(new Vector2(x, y));
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Finds the unexplored location that is cheapest to reach and the path to
+     * it, with a single search. This is Dijkstra's algorithm over the same
+     * states and costs as findPath(), starting from the agent and stopping at
+     * the first state it takes from the open set whose location is
+     * unexplored (and not an obstacle). If several unexplored locations are
+     * equally cheap, the one seen most recently is chosen, as in
+     * findUnexploredPosition(). Unlike findUnexploredPosition(), this
+     * takes walls into account, so the agent does not head for a location
+     * that is close by but only reachable the long way round.
+     * 
+     * @return the path from the current position to the nearest unexplored
+     *         location (including both), or null if none can be reached.
+     */
+    LinkedList<Vector2> findNearestUnexplored() {
+        int startId = iState.getLocationId(iState.getAgentX(),
+                iState.getAgentY());
+        if (startId < 0) {
+            return null;
+        }
+
+        beginSearch(4 * iState.getIdLimit());
+
+        int start = 4 * startId + iState.getAgentDirection();
+        g[start] = 0;
+        cameFrom[start] = -1;
+        visited[start] = searchNumber;
+        open.put(start, 0);
+
+        // The unexplored states found at the lowest cost so far
+        int numFound = 0;
+
+        while (!open.isEmpty()) {
+            int current = open.poll(); // This is always the cheapest state
+            int id = current >> 2;
+            int direction = current & 3;
+
+            if (numFound > 0 && g[current] > g[found[0]]) {
+                break; // Nothing else is as cheap
+            }
+            if (iState.isFrontier(id)) {
+                if (numFound == found.length) {
+                    found = Arrays.copyOf(found, numFound * 2);
+                    foundIds = Arrays.copyOf(foundIds, numFound * 2);
+                }
+                found[numFound] = current;
+                foundIds[numFound++] = id;
+                continue;
+            }
 
-                // Update the appropriate data structures with new values if a
-                // better path was found
-                if (g.get(neighbor) == 0 || tentativeG < g.get(neighbor)) {
-                    cameFrom.put(neighbor, current);
-                    g.put(neighbor, tentativeG);
-
-                    // This uses the heuristic that estimates cost based on both
-                    // turns and Manhattan distance.
-                    f.put(neighbor,
-                            g.get(neighbor)
-                                    + Heuristics.estimateCost(neighbor, goal,
-                                            currentDirection));
-                    if (!open.contains(neighbor)) {
-                        open.add(neighbor);
+            // The next states are going forward, or turning on the spot
+            for (int i = 0; i < 3; i++) {
+                int nextId = id;
+                int nextDirection = direction;
+                int cost;
+                if (i == 0) {
+                    nextId = iState.getNeighborId(id, direction);
+                    if (nextId < 0) {
+                        continue;
                     }
+                    cost = MOVE_COST;
+                } else {
+                    nextDirection = TURNED[i][direction];
+                    cost = TURN_COST;
                 }
-            }
+                int next = 4 * nextId + nextDirection;
 
+                int tentativeG = g[current] + cost;
+                if (visited[next] == searchNumber && tentativeG >= g[next]) {
+                    continue;
+                }
+                visited[next] = searchNumber;
+                cameFrom[next] = current;
+                g[next] = tentativeG;
+                open.put(next, tentativeG);
+            }
         }
 
-        // No path was found, return null
+        if (numFound == 0) { // Every reachable location has been explored
+            return null;
+        }
+        int newest = iState.getNewestInFrontier(foundIds, numFound);
+        for (int i = 0; i < numFound; i++) {
+            if (foundIds[i] == newest) {
+                return constructPath(found[i]);
+            }
+        }
         return null;
-
     }
 
+    /* The states (and their location ids) found by findNearestUnexplored(). */
+    private int[] found = new int[4];
+    private int[] foundIds = new int[4];
+
+    /* The costs of actions, as in VacuumWorld's performance measure. */
+    private static final int MOVE_COST = 2;
+    private static final int TURN_COST = 1;
+
+    /*
+     * TURNED[1][d] is the direction after turning right from d, and
+     * TURNED[2][d] the direction after turning left.
+     */
+    private static final int[][] TURNED = { null, { 1, 2, 3, 0 },
+            { 3, 0, 1, 2 } };
+
     /**
-     * Recursively constructs the optimal path found by the A* algorithm.
+     * Constructs the optimal path found by the A* algorithm by following the
+     * parent of each state back to the start. States where the agent only
+     * turned are left out, since the path is a list of locations.
      * 
-     * @param cameFrom
-     *            a HashMap that maps vectors to the previous vector (on the
-     *            optimal path
-     * @param current
+     * @param goal
+     *            the last state in the path.
      * @return
      */
-    private static LinkedList<Vector2> constructPath(
-            HashMap<Vector2, Vector2> cameFrom, Vector2 current) {
-        LinkedList<Vector2> p;
-        if (cameFrom.containsKey(current)) { // This essentially follows the
-                                             // HashMap recursively until there
-                                             // are no more Vector2 members
-                                             // left.
-            p = constructPath(cameFrom, cameFrom.get(current));
-            p.add(current);
-            return p;
-        } else {
-            p = new LinkedList<Vector2>();
-            p.add(current); // Note that this step adds the starting position in
-                            // the path
-            return p;
+    private LinkedList<Vector2> constructPath(int goal) {
+        LinkedList<Vector2> p = new LinkedList<Vector2>();
+        int lastId = -1;
+        for (int state = goal; state >= 0; state = cameFrom[state]) {
+            int id = state >> 2;
+            if (id != lastId) {
+                p.addFirst(iState.getLocationPosition(id)); // Note that this
+                                                            // adds the starting
+                                                            // position too
+                lastId = id;
+            }
+        }
+        return p;
+    }
+
+    /*
+     * Search state, indexed by state number. A state's entries are only valid
+     * if its visited number is the number of the current search, so the arrays
+     * do not have to be cleared between searches.
+     */
+    private int[] g = new int[0];
+    private int[] cameFrom = new int[0];
+    private int[] visited = new int[0];
+    private int searchNumber = 0;
+
+    /* The results of jumpAside(), valid in the same way. */
+    private int[] jumpedTo = new int[0];
+    private int[] jumpVisited = new int[0];
+
+    /* The open set, ordered by f (see priority()). */
+    private final IdHeap open = new IdHeap();
+
+    /* The number of states opened by findPath() and findJumpPath(). */
+    private long numExpanded = 0;
+
+    /**
+     * @return the number of states findPath() and findJumpPath() have taken
+     *         from the open set so far, for comparing the searches.
+     */
+    public long getNumExpanded() {
+        return numExpanded;
+    }
+
+    /**
+     * Prepares the search state for a new search over the given number of
+     * states.
+     */
+    private void beginSearch(int numStates) {
+        if (g.length < numStates) {
+            int capacity = Math.max(numStates, g.length * 2);
+            g = Arrays.copyOf(g, capacity);
+            cameFrom = Arrays.copyOf(cameFrom, capacity);
+            visited = Arrays.copyOf(visited, capacity);
+            jumpedTo = Arrays.copyOf(jumpedTo, capacity);
+            jumpVisited = Arrays.copyOf(jumpVisited, capacity);
         }
+        open.ensureCapacity(numStates);
+        open.clear();
+        if (++searchNumber == 0) { // The numbers wrapped around
+            Arrays.fill(visited, 0);
+            Arrays.fill(jumpVisited, 0);
+            searchNumber = 1;
+        }
+    }
+
+    /**
+     * The key of a state in the open set. States are ordered by f, and ties in
+     * f are broken in favour of the larger g, i.e. the state closer to the
+     * goal.
+     */
+    private static long priority(int g, int h) {
+        return ((long) (g + h) << 32) | (Integer.MAX_VALUE - g);
     }
 }
@@ -0,0 +1,129 @@
+/**
+ * Author:      Daniel Phang
+ * Class:       CSE431 Intelligent Agents
+ * Professor:   Jeff Heflin
+ * Date:        September 19, 2013
+ * Assignment:  Program #1
+ * Environment: Java 1.6
+ */
+
+package dwp313;
+
+/**
+ * A hash map from (x, y) positions to int values, used by the internal state
+ * to look up the chunk of the map that contains a location. Each position is
+ * packed into a single long key and the map uses open addressing (linear
+ * probing), so no objects are created for lookups or insertions. The keys are
+ * mixed before hashing, because positions along a diagonal would otherwise
+ * collide (as they do with Vector2.hashCode()). Entries can't be removed.
+ * 
+ * @author Daniel Phang
+ * 
+ */
+public class PositionMap {
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+
+    /* The map grows when it is more than half full. */
+    private int threshold;
+
+    /**
+     * Construct an empty map.
+     */
+    public PositionMap() {
+        keys = new long[64];
+        values = new int[64];
+        used = new boolean[64];
+        threshold = 32;
+    }
+
+    /**
+     * @return the number of positions in the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the value stored for a position.
+     * 
+     * @param x
+     * @param y
+     * @return the value, or -1 if the position is not in the map.
+     */
+    public int get(int x, int y) {
+        long key = key(x, y);
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Store a value for a position, replacing any value already stored.
+     * 
+     * @param x
+     * @param y
+     * @param value
+     */
+    public void put(int x, int y, int value) {
+        long key = key(x, y);
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (used[i]) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        used[i] = true;
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        int capacity = keys.length * 2;
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        threshold = capacity / 2;
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldUsed[j]) {
+                int i = slot(oldKeys[j], mask);
+                while (used[i]) {
+                    i = (i + 1) & mask;
+                }
+                used[i] = true;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Packs a position into a long, with x in the high 32 bits and y in the
+     * low 32 bits.
+     */
+    static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L; // Fibonacci hashing
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
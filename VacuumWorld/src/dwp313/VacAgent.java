@@ -9,6 +9,7 @@
 
 package dwp313;
 
+import vacworld.BitPerceptAgent;
 import vacworld.VacPercept;
 import agent.Action;
 import agent.Agent;
@@ -29,7 +30,7 @@ import agent.Percept;
  * All the agent does is update the internal state with its percepts, and get
  * the next action it should perform from the Planner.
  * 
- * STRATEGY: The agent uses a combination of a HashMap as well as heuristic
+ * STRATEGY: The agent uses a combination of a hash map as well as heuristic
  * exploration algorithms to determine which squares it should explore.
  * 
  * Exploration algorithm: as the agent explores the room, it indexes or "sees"
@@ -46,7 +47,18 @@ import agent.Percept;
  * Pathfinding algorithm: this essentially uses an A* search to find the best
  * path to the unexplored location found above. It also uses the same heuristic
  * above that computes both Manhattan distance and turn costs. This returns a
- * path of Vector2 positions.
+ * path of Vector2 positions. Alternatively, a D* Lite search can be used (run
+ * with -Ddwp313.search=dstar), which repairs the path when an obstacle is found
+ * instead of searching again, or a hierarchical search (-Ddwp313.search=hpa),
+ * which plans over the entrances between clusters of the map for very large
+ * rooms. The A* search can also be replaced by a jump point search
+ * (-Ddwp313.search=jps), which finds equally cheap paths but only opens the
+ * locations where the path might turn.
+ * 
+ * By default, though, the two steps are done at once: a Dijkstra search
+ * outwards from the agent stops at the first unexplored square it reaches, so
+ * the square chosen is the one that is actually cheapest to reach, walls and
+ * all. The two step strategy above can be chosen with -Ddwp313.search=astar.
  * 
  * A third algorithm then converts this path into an efficient plan of Turn and
  * GoForward actions.
@@ -54,7 +66,7 @@ import agent.Percept;
  * @author Daniel Phang
  * 
  */
-public class VacAgent extends Agent {
+public class VacAgent extends Agent implements BitPerceptAgent {
     /*
      * Internal state used by the vacuum cleaner agent. This contains
      * information such as the agent's position, direction, and map information.
@@ -74,6 +86,18 @@ public class VacAgent extends Agent {
     public VacAgent() {
         iState = new InternalState();
         planner = new Planner(iState);
+
+        // The path search can be chosen with -Ddwp313.search=name, where the
+        // name is one of Planner.PATH_SEARCH_NAMES.
+        String search = System.getProperty("dwp313.search");
+        if (search != null) {
+            int pathSearch = Planner.getPathSearch(search);
+            if (pathSearch < 0) {
+                System.out.println("Unknown path search: " + search);
+            } else {
+                planner.setPathSearch(pathSearch);
+            }
+        }
     }
 
     @Override
@@ -88,11 +112,25 @@ public class VacAgent extends Agent {
         iState.update((VacPercept) p);
     }
 
+    /**
+     * Update the internal state with a percept encoded as a bitmask. The world
+     * calls this instead of see(Percept), so no percept objects are created.
+     */
+    @Override
+    public void see(int perceptBits) {
+        iState.update(perceptBits);
+    }
+
     @Override
     public Action selectAction() {
         return planner.nextAction();
     }
 
+    /** Return the agent's planner. Used by the planner benchmarks. */
+    Planner getPlanner() {
+        return planner;
+    }
+
     /**
      * The next generation of vacuum cleaners, VAC-E!
      */
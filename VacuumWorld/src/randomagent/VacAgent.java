@@ -21,10 +21,12 @@ import agent.Percept;
 public class VacAgent extends Agent {
     private boolean seeDirt;
     private boolean seeObstacle;
+    private final Random r;
 
     public VacAgent() {
         seeDirt = false;
         seeObstacle = false;
+        r = new Random();
     }
 
     @Override
@@ -36,28 +38,27 @@ public class VacAgent extends Agent {
 
     @Override
     public Action selectAction() {
-        Random r = new Random();
         float chance;
 
         if (seeObstacle) {
             chance = r.nextFloat();
             if (chance < 0.5) {
-                return new TurnLeft();
+                return TurnLeft.INSTANCE;
             } else {
-                return new TurnRight();
+                return TurnRight.INSTANCE;
             }
         } else if (seeDirt) {
-            return new SuckDirt();
+            return SuckDirt.INSTANCE;
         } else {
             chance = r.nextFloat();
             if (chance < 0.2) {
-                return new TurnLeft();
+                return TurnLeft.INSTANCE;
             } else if (chance < 0.4) {
-                return new TurnRight();
+                return TurnRight.INSTANCE;
             } else if (chance < 0.95) {
-                return new GoForward();
+                return GoForward.INSTANCE;
             } else {
-                return new ShutOff();
+                return ShutOff.INSTANCE;
             }
         }
     }
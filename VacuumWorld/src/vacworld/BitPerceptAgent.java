@@ -0,0 +1,18 @@
+package vacworld;
+
+/**
+ * An agent that can receive its percepts as an int bitmask instead of a
+ * VacPercept object. When an agent implements this interface, VacuumWorld
+ * calls see(int) in place of Agent.see(Percept), so no percept objects are
+ * created while the simulation runs.
+ */
+public interface BitPerceptAgent {
+
+    /**
+     * Provide a percept to the agent, encoded as a combination of
+     * VacPercept.DIRT_BIT, VacPercept.OBSTACLE_BIT and VacPercept.BUMP_BIT.
+     * This has the same meaning as Agent.see(Percept).
+     */
+    public void see(int perceptBits);
+
+}
@@ -0,0 +1,193 @@
+package vacworld;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import agent.Action;
+import agent.Agent;
+
+/**
+ * Runs an agent's decisions (see() followed by selectAction()) on a separate
+ * thread with a time budget. If a decision takes longer than the budget, the
+ * world does not wait for it: the fallback action is used instead and the
+ * overrun is counted. Until the late decision finishes, the agent is busy:
+ * each step waits at most the budget for it, and uses the fallback action
+ * without asking the agent again. The late decision's action is discarded,
+ * since it was chosen for an earlier percept. An agent that never returns
+ * therefore costs one thread and slows each step down to the budget, but does
+ * not stop the simulation.
+ *
+ * <p>
+ * An agent that overruns does not know that its action was replaced, so its
+ * model of the world may be wrong afterwards. The default fallback action is
+ * SuckDirt, since it is the only action that does not move or turn the robot.
+ * </p>
+ *
+ * <p>
+ * The time each decision took is recorded in a histogram. For decisions that
+ * overran, this is the time they took in the end (or the time spent so far,
+ * if the run ends first).
+ * </p>
+ */
+public class DecisionWatchdog {
+
+    /** The action used when an agent overruns its budget, by default. */
+    public static final Action DEFAULT_FALLBACK = SuckDirt.INSTANCE;
+
+    /*
+     * Decisions from every world run on this pool. Its threads are daemons, so
+     * a stuck agent does not keep the program from exiting, and idle threads
+     * are released after a minute.
+     */
+    private static final ExecutorService THREADS = Executors
+            .newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "vacworld-decision");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private final long budgetNanos;
+    private final Action fallback;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private int numOverruns = 0;
+
+    /* A decision that overran and has not finished yet, or null. */
+    private Future<Decision> pending;
+    private long pendingStart;
+
+    /**
+     * Construct a watchdog with the given budget and fallback action.
+     *
+     * @param budget
+     *            the longest a decision may take.
+     * @param unit
+     *            the unit of the budget.
+     * @param fallback
+     *            the action used when a decision overruns.
+     */
+    public DecisionWatchdog(long budget, TimeUnit unit, Action fallback) {
+        if (budget <= 0)
+            throw new IllegalArgumentException("Invalid decision budget: "
+                    + budget);
+        this.budgetNanos = unit.toNanos(budget);
+        this.fallback = fallback;
+    }
+
+    /**
+     * Let the agent see a percept and select an action, waiting at most the
+     * budget for it. The percept is given as for VacuumWorld.decide().
+     *
+     * @return the agent's action, or the fallback action if it overran or is
+     *         still busy with an earlier decision.
+     */
+    public Action decide(final Agent a, final int perceptBits,
+            final VacPercept percept) {
+        if (pending != null) {
+            try {
+                Decision late = pending.get(budgetNanos,
+                        TimeUnit.NANOSECONDS);
+                latencies.record(late.nanos);
+                pending = null;
+            } catch (TimeoutException e) {
+                // still busy
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                pending = null;
+            }
+            numOverruns++;
+            return fallback;
+        }
+
+        long submitted = System.nanoTime();
+        Future<Decision> f = THREADS.submit(new Callable<Decision>() {
+            public Decision call() {
+                long start = System.nanoTime();
+                Action action = VacuumWorld.decide(a, perceptBits, percept);
+                return new Decision(action, System.nanoTime() - start);
+            }
+        });
+        try {
+            Decision d = f.get(budgetNanos, TimeUnit.NANOSECONDS);
+            latencies.record(d.nanos);
+            return d.action;
+        } catch (TimeoutException e) {
+            pending = f;
+            pendingStart = System.nanoTime() - budgetNanos;
+            numOverruns++;
+            return fallback;
+        } catch (InterruptedException e) {
+            // The decision is left running, as after a timeout
+            Thread.currentThread().interrupt();
+            pending = f;
+            pendingStart = submitted;
+            numOverruns++;
+            return fallback;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Agent failed", e.getCause());
+        }
+    }
+
+    /**
+     * Record the time spent so far by a decision that is still running. This
+     * should be called when the run is over.
+     */
+    public void finishRun() {
+        if (pending != null) {
+            if (pending.isDone())
+                latencies.record(finish(pending).nanos);
+            else
+                latencies.record(System.nanoTime() - pendingStart);
+            pending = null;
+        }
+    }
+
+    private static Decision finish(Future<Decision> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Decision(null, 0);
+        } catch (ExecutionException e) {
+            // The action is discarded anyway
+            return new Decision(null, 0);
+        }
+    }
+
+    /** Return the histogram of decision times. */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /** Return the number of steps in which the fallback action was used. */
+    public int getNumOverruns() {
+        return numOverruns;
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    public Action getFallback() {
+        return fallback;
+    }
+
+    /** An action and the time it took to select it. */
+    private static final class Decision {
+        final Action action;
+        final long nanos;
+
+        Decision(Action action, long nanos) {
+            this.action = action;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -1,13 +1,15 @@
 package vacworld;
 
 import agent.Agent;
-import agent.Action;
 import agent.State;
 
 /**
  * A vacuum cleaning agent action that causes the agent to advance one step.
  */
-public final class GoForward extends Action {
+public final class GoForward extends VacAction {
+
+    /** The shared instance of this action. */
+    public static final GoForward INSTANCE = new GoForward();
 
     public GoForward() {
 
@@ -15,9 +17,9 @@ public final class GoForward extends Action {
 
     /**
      * Return the state that results from the agent moving forward in the given
-     * state. In order to avoid creating unnecessary objects, we do not create a
-     * new state, but instead modify the old one. This would have to change if
-     * the Environment needs to maintain a history of states.
+     * state. The state returned by VacuumState.successor() is modified, which
+     * is the old state itself unless it is a persistent state that the
+     * Environment keeps as part of a history of states.
      */
     public State execute(Agent a, State s) {
 
@@ -27,7 +29,7 @@ public final class GoForward extends Action {
         VacuumState state = null;
 
         if (s instanceof VacuumState)
-            state = (VacuumState) s;
+            state = ((VacuumState) s).successor();
         else
             System.out
                     .println("ERROR - Argument to GoForward.execute() is not of type VacuumState");
@@ -64,6 +66,10 @@ public final class GoForward extends Action {
         return state;
     }
 
+    public int getOpcode() {
+        return GO_FORWARD;
+    }
+
     public String toString() {
         return "GO FORWARD";
     }
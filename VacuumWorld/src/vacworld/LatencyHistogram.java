@@ -0,0 +1,97 @@
+package vacworld;
+
+/**
+ * A histogram of durations in nanoseconds. Durations are counted in
+ * log-linear buckets: 16 buckets for each power of two, so percentiles are
+ * reported to within 1/16 (6.25%) of the true value while the histogram has a
+ * small fixed size. The count, mean and maximum are exact.
+ */
+public class LatencyHistogram {
+
+    /* Log2 of the number of buckets per power of two. */
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_COUNT];
+    private long count = 0;
+    private long total = 0;
+    private long max = 0;
+
+    /** Add a duration, in nanoseconds, to the histogram. */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts[bucket(nanos)]++;
+        count++;
+        total += nanos;
+        if (nanos > max)
+            max = nanos;
+    }
+
+    /** Add all durations in another histogram to this one. */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Return the duration that the given percentage (0 to 100) of the recorded
+     * durations do not exceed, or 0 if nothing has been recorded.
+     */
+    public long getPercentile(double percent) {
+        if (count == 0)
+            return 0;
+        long rank = (long) Math.ceil(percent / 100 * count);
+        if (rank < 1)
+            rank = 1;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(max, highestValue(i));
+        }
+        return max;
+    }
+
+    /**
+     * Return a one line summary of the median, 99th percentile and maximum in
+     * microseconds.
+     */
+    public String summary() {
+        return String.format("p50 %.1f us\tp99 %.1f us\tmax %.1f us",
+                getPercentile(50) / 1e3, getPercentile(99) / 1e3, max / 1e3);
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < SUB_COUNT)
+            return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /* The largest duration that falls in a bucket. */
+    private static long highestValue(int bucket) {
+        if (bucket < SUB_COUNT)
+            return bucket;
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        long sub = bucket % SUB_COUNT;
+        return ((SUB_COUNT + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,758 @@
+package vacworld;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import agent.Action;
+import agent.Agent;
+import agent.State;
+
+/**
+ * A vacuum cleaning world in which several robots share one room. Each robot
+ * is controlled by its own agent object.
+ *
+ * <p>
+ * The simulation runs in ticks. In each tick, every robot that is still
+ * running perceives the room as it was at the start of the tick, and the
+ * agents' see() and selectAction() calls run concurrently on a worker pool.
+ * The chosen actions are then applied one robot at a time, in the order the
+ * agents were added, so the result does not depend on thread scheduling.
+ * </p>
+ *
+ * <p>
+ * A robot sees another robot in the location in front of it as an obstacle,
+ * so agents written for the single agent world steer around it as they would
+ * around a wall, instead of trying to move into it again and again. A robot
+ * that still moves into another robot (one that moved in front of it in the
+ * same tick) feels a bump instead, and the bump is scored like a bump into a
+ * wall. A move is blocked if:
+ * </p>
+ *
+ * <ul>
+ * <li>another robot that was added earlier is moving into the same location,
+ * </li>
+ * <li>the robot in front is moving into this robot's location (robots cannot
+ * pass through each other), or</li>
+ * <li>the location is occupied by a robot that is not moving out of it.</li>
+ * </ul>
+ *
+ * <p>
+ * A robot that has shut off or run out of actions is taken out of the room,
+ * so it does not block the others. Since no two robots share a location, two
+ * robots can never suck up the same dirt.
+ * </p>
+ *
+ * <p>
+ * Each robot has the same action limit as a single robot would in this room.
+ * The performance measure of each agent uses the single agent formula with
+ * that robot's own actions and bumps, and the dirt left in the room, which
+ * all robots share. Traces and state histories are not supported.
+ * </p>
+ */
+public class MultiAgentVacuumWorld extends VacuumWorld {
+
+    /** The robots in the world, in the order their agents were added. */
+    protected ArrayList<Robot> robots = new ArrayList<Robot>();
+
+    /** The pool that runs the agents' decisions. */
+    protected ExecutorService pool;
+
+    /* The number of ticks since the simulation started. */
+    private int numTicks;
+
+    /* Reused by the resolution phase: the robot index at each location. */
+    private final HashMap<Integer, Integer> occupied = new HashMap<Integer, Integer>();
+    private final HashMap<Integer, Integer> claimed = new HashMap<Integer, Integer>();
+
+    /** Construct a world that runs the agents on the common fork-join pool. */
+    public MultiAgentVacuumWorld() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Construct a world that runs the agents on the given pool. The pool is
+     * not shut down by the world.
+     */
+    public MultiAgentVacuumWorld(ExecutorService pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Add a robot controlled by the given agent. The first robot starts at the
+     * agent position of the initial state, and the others are spread over the
+     * rest of the room. Every agent must be a separate object.
+     */
+    public void addAgent(Agent agent) {
+        addAgent(agent, -1, -1, Direction.NORTH);
+    }
+
+    /**
+     * Add a robot controlled by the given agent, starting at the given
+     * location and direction. If the location is a wall or is already taken,
+     * the robot is placed as if no location had been given.
+     */
+    public void addAgent(Agent agent, int x, int y, int dir) {
+        for (Robot r : robots) {
+            if (r.agent == agent) {
+                output.println("ERROR - tried to add the same agent twice");
+                return;
+            }
+        }
+        agents.add(agent);
+        robots.add(new Robot(agent, x, y, dir));
+    }
+
+    /** Traces are not supported in a multi-agent world. */
+    @Override
+    public void setTrace(TraceWriter trace) {
+        if (trace != null)
+            output.println("ERROR - traces are not supported in a multi-agent world");
+    }
+
+    /** State histories are not supported in a multi-agent world. */
+    @Override
+    public void setKeepHistory(boolean keepHistory) {
+        if (keepHistory)
+            output.println("ERROR - histories are not supported in a multi-agent world");
+    }
+
+    /** Start the simulation and place the robots in the room. */
+    @Override
+    public void start(State initState) {
+        super.start(initState);
+        numTicks = 0;
+
+        // Each robot has its own watchdog, so that one slow agent does not
+        // make the others fall back.
+        watchdog = null;
+        for (Robot r : robots) {
+            r.watchdog = null;
+            if (decisionBudgetNanos > 0)
+                r.watchdog = new DecisionWatchdog(decisionBudgetNanos,
+                        TimeUnit.NANOSECONDS, fallbackAction);
+        }
+
+        VacuumState s = (VacuumState) state;
+        HashMap<Integer, Integer> taken = new HashMap<Integer, Integer>();
+        ArrayList<Robot> unplaced = new ArrayList<Robot>();
+        for (int i = 0; i < robots.size(); i++) {
+            Robot r = robots.get(i);
+            r.reset();
+            if (i == 0 && r.startX < 0) {
+                r.x = s.getAgentX();
+                r.y = s.getAgentY();
+                r.dir = s.getAgentDir();
+            } else if (r.startX >= 0) {
+                r.x = r.startX;
+                r.y = r.startY;
+                r.dir = r.startDir;
+            }
+            if (r.x >= 0) {
+                if (!s.inBounds(r.x, r.y) || s.hasObstacle(r.x, r.y)
+                        || taken.containsKey(cell(r.x, r.y))) {
+                    output.println("ERROR - invalid start location for robot "
+                            + i + ": (" + r.x + "," + r.y + ")");
+                    r.x = -1;
+                } else {
+                    taken.put(cell(r.x, r.y), i);
+                }
+            }
+            if (r.x < 0)
+                unplaced.add(r);
+        }
+        place(unplaced, taken);
+        showRobot(0);
+    }
+
+    /**
+     * Spread the given robots over the free locations of the room. The k-th
+     * robot starts looking at the same fraction k/n of the free locations in
+     * row-major order, and takes the first one that is not taken.
+     */
+    private void place(ArrayList<Robot> unplaced, HashMap<Integer, Integer> taken) {
+        if (unplaced.isEmpty())
+            return;
+        VacuumState s = (VacuumState) state;
+        ArrayList<Integer> free = new ArrayList<Integer>();
+        for (int j = 0; j < s.getHeight(); j++) {
+            for (int i = 0; i < s.getWidth(); i++) {
+                if (!s.hasObstacle(i, j))
+                    free.add(cell(i, j));
+            }
+        }
+
+        int n = unplaced.size();
+        for (int k = 0; k < n; k++) {
+            Robot r = unplaced.get(k);
+            int start = (int) ((long) k * free.size() / n);
+            for (int t = 0; t < free.size(); t++) {
+                int c = free.get((start + t) % free.size());
+                if (!taken.containsKey(c)) {
+                    taken.put(c, robots.indexOf(r));
+                    r.x = c % s.getWidth();
+                    r.y = c / s.getWidth();
+                    r.dir = Direction.NORTH;
+                    break;
+                }
+            }
+            if (r.x < 0) {
+                output.println("ERROR - no room for robot "
+                        + robots.indexOf(r));
+                r.off = true;
+            }
+        }
+    }
+
+    /** The simulation is complete when every robot has stopped. */
+    @Override
+    public boolean isComplete() {
+        for (Robot r : robots) {
+            if (r.isActive(maxActions))
+                return false;
+        }
+        return true;
+    }
+
+    /** Returns true if any robot ran out of actions. */
+    @Override
+    protected boolean timedOut() {
+        for (Robot r : robots) {
+            if (r.getNumActions() >= maxActions)
+                return true;
+        }
+        return false;
+    }
+
+    /** Run a single tick, in which every running robot acts once. */
+    @Override
+    public void step() {
+        if (!isComplete())
+            tick();
+    }
+
+    @Override
+    public void runToCompletion() {
+        while (!isComplete())
+            tick();
+    }
+
+    /** Perform one sense-act cycle for every running robot. */
+    protected void tick() {
+        long start = metrics != null ? System.nanoTime() : 0;
+        VacuumState s = (VacuumState) state;
+        ArrayList<Robot> active = new ArrayList<Robot>();
+        occupied.clear();
+        for (Robot r : robots) {
+            if (r.isActive(maxActions)) {
+                occupied.put(cell(r.x, r.y), active.size());
+                active.add(r);
+            }
+        }
+        for (Robot r : active) {
+            load(r);
+            r.perceptBits = VacPercept.encode(s);
+            int ax = r.x + Direction.DELTA_X[r.dir];
+            int ay = r.y + Direction.DELTA_Y[r.dir];
+            if (s.inBounds(ax, ay) && occupied.containsKey(cell(ax, ay)))
+                r.perceptBits |= VacPercept.OBSTACLE_BIT;
+            r.action = null;
+        }
+        long perceived = metrics != null ? System.nanoTime() : 0;
+        int overrunsBefore = metrics != null ? getNumOverruns() : 0;
+
+        // Decision phase: the agents only touch their own state, so they can
+        // run concurrently.
+        if (active.size() == 1) {
+            active.get(0).decide();
+        } else {
+            ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (final Robot r : active) {
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        r.decide();
+                        return null;
+                    }
+                });
+            }
+            try {
+                List<Future<Void>> results = pool.invokeAll(tasks);
+                for (Future<Void> f : results) {
+                    f.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(
+                        "Interrupted while the agents were deciding", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Agent failed", e.getCause());
+            }
+        }
+
+        // Resolution phase
+        long decided = metrics != null ? System.nanoTime() : 0;
+        int bumpsBefore = numBumps;
+        resolveMoves(active);
+        for (Robot r : active) {
+            apply(r);
+        }
+        numTicks++;
+        showRobot(0);
+        if (metrics != null) {
+            metrics.recordStep(perceived - start, decided - perceived,
+                    System.nanoTime() - decided, numBumps - bumpsBefore,
+                    getNumOverruns() - overrunsBefore);
+        }
+        if ((decisionBudgetNanos > 0 || metrics != null) && isComplete())
+            finishRun();
+    }
+
+    /** Return the number of overruns of all the robots' watchdogs. */
+    @Override
+    protected int getNumOverruns() {
+        int n = 0;
+        for (Robot r : robots) {
+            if (r.watchdog != null)
+                n += r.watchdog.getNumOverruns();
+        }
+        return n;
+    }
+
+    @Override
+    protected void finishRun() {
+        super.finishRun();
+        for (Robot r : robots) {
+            if (r.watchdog != null)
+                r.watchdog.finishRun();
+        }
+    }
+
+    /**
+     * Decide which of the robots that are moving forward are blocked by other
+     * robots. This only depends on the positions at the start of the tick and
+     * the order of the robots.
+     */
+    private void resolveMoves(ArrayList<Robot> active) {
+        VacuumState s = (VacuumState) state;
+        claimed.clear();
+        for (Robot r : active) {
+            r.blocked = false;
+            r.moving = false;
+        }
+
+        // The earliest robot to claim a location gets it
+        for (int i = 0; i < active.size(); i++) {
+            Robot r = active.get(i);
+            if (VacAction.opcodeOf(r.action) != VacAction.GO_FORWARD)
+                continue;
+            int tx = r.x + Direction.DELTA_X[r.dir];
+            int ty = r.y + Direction.DELTA_Y[r.dir];
+            if (!s.inBounds(tx, ty) || s.hasObstacle(tx, ty))
+                continue; // a wall bump, handled by GoForward
+            r.moving = true;
+            r.target = cell(tx, ty);
+            if (claimed.containsKey(r.target))
+                r.blocked = true;
+            else
+                claimed.put(r.target, i);
+        }
+
+        // Robots cannot swap places
+        for (int i = 0; i < active.size(); i++) {
+            Robot r = active.get(i);
+            Integer other = r.moving ? occupied.get(r.target) : null;
+            if (other != null) {
+                Robot o = active.get(other);
+                if (o.moving && o.target == cell(r.x, r.y)) {
+                    r.blocked = true;
+                    o.blocked = true;
+                }
+            }
+        }
+
+        // A robot cannot move into a location that stays occupied. Blocking
+        // one robot can block the one behind it, so repeat until nothing
+        // changes.
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < active.size(); i++) {
+                Robot r = active.get(i);
+                if (!r.moving || r.blocked)
+                    continue;
+                Integer other = occupied.get(r.target);
+                if (other != null) {
+                    Robot o = active.get(other);
+                    if (!o.moving || o.blocked) {
+                        r.blocked = true;
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Apply a robot's action to the shared state and update its score. */
+    private void apply(Robot r) {
+        Action action = r.action;
+        int opcode = VacAction.opcodeOf(action);
+        load(r);
+        int dirtBefore = getNumDirtyLocs();
+        switch (opcode) {
+        case VacAction.GO_FORWARD:
+            if (r.blocked) {
+                ((VacuumState) state).setBump(true);
+            } else {
+                state = action.execute(r.agent, state);
+            }
+            r.numMoves++;
+            numMoves++;
+            break;
+        case VacAction.TURN_LEFT:
+        case VacAction.TURN_RIGHT:
+            state = action.execute(r.agent, state);
+            r.numTurns++;
+            numTurns++;
+            break;
+        case VacAction.SUCK_DIRT:
+            state = action.execute(r.agent, state);
+            r.numSucks++;
+            numSucks++;
+            break;
+        case VacAction.SHUT_OFF:
+            state = action.execute(r.agent, state);
+            break;
+        default:
+            System.err.println("ERROR: Invalid action: " + action);
+            ((VacuumState) state).setBump(false);
+        }
+        VacuumState s = (VacuumState) state;
+        if (s.bumped()) {
+            r.numBumps++;
+            numBumps++;
+        }
+        r.numCleaned += dirtBefore - getNumDirtyLocs();
+        r.x = s.getAgentX();
+        r.y = s.getAgentY();
+        r.dir = s.getAgentDir();
+        r.bump = s.bumped();
+        r.off = s.isRobotOff();
+    }
+
+    /** Make the state's agent position that of the given robot. */
+    private void load(Robot r) {
+        VacuumState s = (VacuumState) state;
+        s.setAgentX(r.x);
+        s.setAgentY(r.y);
+        s.setAgentDir(r.dir);
+        s.setBump(r.bump);
+        s.setRobotOff(r.off);
+    }
+
+    /**
+     * Show a robot in the state, so that getState() and getCurrentPercept()
+     * describe it.
+     */
+    private void showRobot(int i) {
+        if (i < robots.size()) {
+            Robot r = robots.get(i);
+            load(r);
+            currentPercept = null;
+            currentPerceptBits = r.perceptBits;
+            currentAction = r.action;
+        }
+    }
+
+    private int cell(int x, int y) {
+        return y * ((VacuumState) state).getWidth() + x;
+    }
+
+    /** Return the number of ticks since the simulation started. */
+    public int getNumTicks() {
+        return numTicks;
+    }
+
+    /** Return the robots, in the order their agents were added. */
+    public List<Robot> getRobots() {
+        return Collections.unmodifiableList(robots);
+    }
+
+    /** Return the robot controlled by an agent, or null. */
+    public Robot getRobot(Agent a) {
+        for (Robot r : robots) {
+            if (r.agent == a)
+                return r;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the performance measure of the whole fleet: the single agent
+     * formula applied to every robot's actions together.
+     */
+    @Override
+    public int getTeamPerformanceMeasure() {
+        return getPerformanceMeasure();
+    }
+
+    /**
+     * Returns the performance measure of one agent: the single agent formula
+     * applied to its own actions and bumps and the dirt left in the room.
+     * Returns 0 for an agent that is not in this world.
+     */
+    @Override
+    public int getPerformanceMeasure(Agent a) {
+        Robot r = getRobot(a);
+        if (r == null)
+            return 0;
+        return getPerformanceMeasure(r.numMoves, r.numTurns, r.numSucks,
+                r.numBumps, r.getNumActions() >= maxActions);
+    }
+
+    @Override
+    public void printScore(PrintStream out) {
+        super.printScore(out);
+        out.println("Robots:");
+        out.println("------");
+        out.println("  Robot\tAgent\tMoves\tTurns\tSucks\tBumps\tCleaned\tScore");
+        for (int i = 0; i < robots.size(); i++) {
+            Robot r = robots.get(i);
+            out.println("  " + i + "\t" + r.agent.getId() + "\t" + r.numMoves
+                    + "\t" + r.numTurns + "\t" + r.numSucks + "\t"
+                    + r.numBumps + "\t" + r.numCleaned + "\t"
+                    + getPerformanceMeasure(r.agent)
+                    + (r.getNumActions() >= maxActions ? "\t(timeout)" : ""));
+        }
+        out.println();
+        if (decisionBudgetNanos > 0) {
+            out.println("Decisions:");
+            out.println("---------");
+            for (int i = 0; i < robots.size(); i++) {
+                DecisionWatchdog w = robots.get(i).watchdog;
+                if (w != null) {
+                    out.println("  " + i + "\t" + w.getLatencies().summary()
+                            + "\t(" + w.getNumOverruns() + " overruns)");
+                }
+            }
+            out.println();
+        }
+    }
+
+    /**
+     * Runs a multi-agent simulation in batch mode. The usage is:
+     *
+     * <pre>
+     * java vacworld.MultiAgentVacuumWorld [-rand integer] [-size width height] [-density wall dirt] [-robots n] [-threads n] [-budget ms] [-metrics] agentpack [agentpack ...]
+     * </pre>
+     *
+     * Each agent package must contain a VacAgent class, and n robots (1 by
+     * default) are added for each package, in the order given. The agents
+     * decide on a pool with as many threads as there are available processors
+     * unless -threads is given. With -budget, every robot has its own
+     * decision budget. The other arguments work as they do for VacuumWorld,
+     * except that with -metrics, a step is a whole tick.
+     */
+    public static void main(String[] args) {
+
+        int randSeed = 0;
+        boolean randomState = false;
+        int robotsPerAgent = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long budgetMillis = 0;
+        boolean useMetrics = false;
+        int width = VacuumState.DEFAULT_WIDTH;
+        int height = VacuumState.DEFAULT_HEIGHT;
+        double wallDensity = VacuumState.WALL_CHANCE;
+        double dirtDensity = VacuumState.DIRT_CHANCE - VacuumState.WALL_CHANCE;
+        ArrayList<String> names = new ArrayList<String>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-rand")) {
+                    randSeed = Integer.parseInt(args[++i]);
+                    randomState = true;
+                } else if (args[i].equals("-size")) {
+                    width = Integer.parseInt(args[++i]);
+                    height = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-density")) {
+                    wallDensity = Double.parseDouble(args[++i]);
+                    dirtDensity = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("-robots")) {
+                    robotsPerAgent = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-budget")) {
+                    budgetMillis = Long.parseLong(args[++i]);
+                } else if (args[i].equals("-metrics")) {
+                    useMetrics = true;
+                } else {
+                    names.add(args[i] + ".VacAgent");
+                }
+            }
+        } catch (RuntimeException ex) {
+            names.clear();
+        }
+        if (names.isEmpty() || robotsPerAgent < 1 || threads < 1) {
+            System.err.println("ERROR: Invalid command line arguments.");
+            System.err
+                    .println("Usage: java vacworld.MultiAgentVacuumWorld [-rand integer] [-size width height] [-density wall dirt] [-robots n] [-threads n] [-budget ms] [-metrics] agentpack [agentpack ...]");
+            System.exit(1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        MultiAgentVacuumWorld world = new MultiAgentVacuumWorld(pool);
+        if (budgetMillis > 0)
+            world.setDecisionBudget(budgetMillis, TimeUnit.MILLISECONDS);
+        if (useMetrics) {
+            StepMetrics metrics = new StepMetrics();
+            metrics.register("MultiAgentVacuumWorld");
+            world.setMetrics(metrics);
+        }
+        for (String name : names) {
+            for (int k = 0; k < robotsPerAgent; k++) {
+                Agent agent = createAgent(name);
+                if (agent == null) {
+                    System.err.println("ERROR: Unable to load class " + name);
+                    System.exit(1);
+                }
+                world.addAgent(agent);
+            }
+        }
+
+        System.out.println("The Vacuum Cleaner World Agent Testbed");
+        System.out.println("--------------------------------------");
+        System.out.println();
+
+        VacuumState initState;
+        if (randomState) {
+            initState = VacuumState.getRandomState(randSeed, width, height,
+                    wallDensity, dirtDensity);
+            System.out.println("State generated with seed " + randSeed);
+            System.out.println();
+        } else
+            initState = VacuumState.getInitState();
+
+        world.start(initState);
+        world.runToCompletion();
+        pool.shutdown();
+
+        if (world.timedOut()) {
+            System.out.println("*** Timeout. Test halted! ***");
+            System.out.println();
+        }
+        System.out.println("Finished after " + world.getNumTicks() + " ticks");
+        System.out.println();
+        world.printScore(System.out);
+    }
+
+    /** The position and score of one robot. */
+    public static class Robot {
+        final Agent agent;
+
+        /* The requested start position, or -1 to place the robot. */
+        final int startX;
+        final int startY;
+        final int startDir;
+
+        int x;
+        int y;
+        int dir;
+        boolean bump;
+        boolean off;
+
+        int numMoves;
+        int numTurns;
+        int numSucks;
+        int numBumps;
+        int numCleaned;
+
+        /* Enforces the decision budget, if there is one */
+        DecisionWatchdog watchdog;
+
+        /* Per-tick data */
+        int perceptBits;
+        Action action;
+        boolean moving;
+        boolean blocked;
+        int target;
+
+        Robot(Agent agent, int startX, int startY, int startDir) {
+            this.agent = agent;
+            this.startX = startX;
+            this.startY = startY;
+            this.startDir = startDir;
+        }
+
+        void reset() {
+            x = -1;
+            y = -1;
+            dir = Direction.NORTH;
+            bump = false;
+            off = false;
+            numMoves = 0;
+            numTurns = 0;
+            numSucks = 0;
+            numBumps = 0;
+            numCleaned = 0;
+            perceptBits = -1;
+            action = null;
+        }
+
+        /* Let the agent see its percept and choose an action. */
+        void decide() {
+            if (watchdog != null)
+                action = watchdog.decide(agent, perceptBits, null);
+            else
+                action = VacuumWorld.decide(agent, perceptBits, null);
+        }
+
+        boolean isActive(int maxActions) {
+            return !off && getNumActions() < maxActions;
+        }
+
+        int getNumActions() {
+            return numMoves + numTurns + numSucks;
+        }
+
+        public Agent getAgent() {
+            return agent;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getDir() {
+            return dir;
+        }
+
+        public boolean isOff() {
+            return off;
+        }
+
+        /**
+         * Return the watchdog that enforces this robot's decision budget, or
+         * null if there is no budget.
+         */
+        public DecisionWatchdog getWatchdog() {
+            return watchdog;
+        }
+
+        /** Return the number of dirty locations this robot has cleaned. */
+        public int getNumCleaned() {
+            return numCleaned;
+        }
+    }
+}
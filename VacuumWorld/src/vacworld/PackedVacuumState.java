@@ -0,0 +1,164 @@
+package vacworld;
+
+/**
+ * A vacuum world state whose map is stored as two bitsets instead of an
+ * int[][] array: one for walls and one for dirt, both in flat row-major order.
+ * Each location only needs two bits rather than 32, so very large rooms can be
+ * simulated with roughly 16 times less memory.
+ */
+public class PackedVacuumState extends VacuumState {
+
+    /** Bitset of locations that contain an obstacle. */
+    protected long[] walls;
+
+    /** Bitset of locations that contain dirt. */
+    protected long[] dirt;
+
+    /**
+     * Construct a new packed state with an empty (all CLEAR) map of the given
+     * size. This should only be called internally, and should be followed by
+     * code that initializes the state.
+     */
+    protected PackedVacuumState(int width, int height) {
+
+        long cells = (long) width * height;
+        if (cells > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Map too large: " + width
+                    + "x" + height);
+        this.width = width;
+        this.height = height;
+        walls = new long[(int) ((cells + 63) >>> 6)];
+        dirt = new long[walls.length];
+    }
+
+    /**
+     * Construct a new packed vacuum state given an array that specifies the
+     * map. The array itself is not kept.
+     */
+    public PackedVacuumState(int[][] map) {
+
+        this(map.length, map[0].length);
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                setCell(i, j, map[i][j]);
+            }
+        }
+        numDirtyLocs = countDirtyLocs();
+        agentX = INIT_X;
+        agentY = INIT_Y;
+        agentDir = INIT_DIR;
+    }
+
+    /** Return a packed copy of the given state. */
+    public static PackedVacuumState pack(VacuumState s) {
+
+        PackedVacuumState state = new PackedVacuumState(s.width, s.height);
+        for (int i = 0; i < s.width; i++) {
+            for (int j = 0; j < s.height; j++) {
+                state.setCell(i, j, s.getCell(i, j));
+            }
+        }
+        state.numDirtyLocs = s.numDirtyLocs;
+        state.agentX = s.agentX;
+        state.agentY = s.agentY;
+        state.agentDir = s.agentDir;
+        state.robotOff = s.robotOff;
+        state.bump = s.bump;
+        return state;
+    }
+
+    @Override
+    public boolean hasDirt(int x, int y) {
+
+        int i = y * width + x;
+        return (dirt[i >>> 6] & (1L << i)) != 0;
+    }
+
+    @Override
+    public boolean hasObstacle(int x, int y) {
+
+        int i = y * width + x;
+        return (walls[i >>> 6] & (1L << i)) != 0;
+    }
+
+    @Override
+    public void removeDirt(int x, int y) {
+
+        int i = y * width + x;
+        long bit = 1L << i;
+        if ((dirt[i >>> 6] & bit) != 0) {
+            dirt[i >>> 6] &= ~bit;
+            numDirtyLocs--;
+        }
+    }
+
+    @Override
+    protected int getCell(int x, int y) {
+
+        if (hasObstacle(x, y))
+            return WALL;
+        else if (hasDirt(x, y))
+            return DIRT;
+        else
+            return CLEAR;
+    }
+
+    @Override
+    protected void setCell(int x, int y, int value) {
+
+        int i = y * width + x;
+        long bit = 1L << i;
+        walls[i >>> 6] &= ~bit;
+        dirt[i >>> 6] &= ~bit;
+        if (value == WALL)
+            walls[i >>> 6] |= bit;
+        else if (value == DIRT)
+            dirt[i >>> 6] |= bit;
+    }
+
+    @Override
+    protected long[] getObstacleBits() {
+
+        return walls.clone();
+    }
+
+    @Override
+    protected void fillWalls(long[] keep) {
+
+        int cells = width * height;
+        for (int k = 0; k < walls.length; k++) {
+            long fill = ~keep[k];
+            if (k == walls.length - 1 && (cells & 63) != 0)
+                fill &= (1L << cells) - 1; // ignore bits past the last cell
+            walls[k] |= fill;
+            dirt[k] &= ~fill;
+        }
+    }
+
+    /** Count the dirty locations with a population count of the dirt bits. */
+    @Override
+    protected int countDirtyLocs() {
+
+        int dirtCount = 0;
+        for (int i = 0; i < dirt.length; i++) {
+            dirtCount += Long.bitCount(dirt[i]);
+        }
+        return dirtCount;
+    }
+
+    /**
+     * Return the map corresponding to this state. Since the map is packed, a
+     * new array is built on every call.
+     */
+    @Override
+    public int[][] getMap() {
+
+        int[][] map = new int[width][height];
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                map[i][j] = getCell(i, j);
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,276 @@
+package vacworld;
+
+import java.util.Arrays;
+
+/**
+ * A persistent vacuum world state. Actions never modify a persistent state in
+ * place: successor() returns a new state that shares its map with this one,
+ * and removing dirt copies only the 64x64 tile that changed (plus the arrays
+ * that point to it). Keeping every state of a run therefore costs memory in
+ * proportion to the number of actions rather than actions times locations.
+ *
+ * <p>
+ * Walls never change during a simulation, so they are kept in a single
+ * row-major bitset that all successors share. Dirt is kept in tiles indexed by
+ * [tile row][tile column], where each tile holds one long per row of 64
+ * locations. Tiles without any dirt are null.
+ * </p>
+ */
+public class PersistentVacuumState extends VacuumState {
+
+    /** Log2 of the tile size. */
+    protected static final int TILE_SHIFT = 6;
+
+    /** The number of locations along each side of a tile. */
+    protected static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+    /** Bitset of locations that contain an obstacle. Shared by successors. */
+    protected long[] walls;
+
+    /** Copy-on-write dirt tiles. Shared by successors. */
+    protected long[][][] dirt;
+
+    /**
+     * Construct a new persistent state with an empty (all CLEAR) map of the
+     * given size. This should only be called internally, and should be
+     * followed by code that initializes the state.
+     */
+    protected PersistentVacuumState(int width, int height) {
+
+        long cells = (long) width * height;
+        if (cells > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Map too large: " + width
+                    + "x" + height);
+        this.width = width;
+        this.height = height;
+        walls = new long[(int) ((cells + 63) >>> 6)];
+        dirt = new long[(height + TILE_SIZE - 1) >>> TILE_SHIFT][(width
+                + TILE_SIZE - 1) >>> TILE_SHIFT][];
+    }
+
+    /** Construct a state that shares its map with the given state. */
+    protected PersistentVacuumState(PersistentVacuumState s) {
+
+        width = s.width;
+        height = s.height;
+        walls = s.walls;
+        dirt = s.dirt;
+        numDirtyLocs = s.numDirtyLocs;
+        agentX = s.agentX;
+        agentY = s.agentY;
+        agentDir = s.agentDir;
+        robotOff = s.robotOff;
+        bump = s.bump;
+    }
+
+    /** Return a persistent copy of the given state. */
+    public static PersistentVacuumState of(VacuumState s) {
+
+        PersistentVacuumState state = new PersistentVacuumState(s.width,
+                s.height);
+        for (int j = 0; j < s.height; j++) {
+            for (int i = 0; i < s.width; i++) {
+                int cell = s.getCell(i, j);
+                if (cell == WALL) {
+                    int k = j * s.width + i;
+                    state.walls[k >>> 6] |= 1L << k;
+                } else if (cell == DIRT) {
+                    state.tileFor(i, j)[j & (TILE_SIZE - 1)] |= 1L << i;
+                }
+            }
+        }
+        state.numDirtyLocs = s.numDirtyLocs;
+        state.agentX = s.agentX;
+        state.agentY = s.agentY;
+        state.agentDir = s.agentDir;
+        state.robotOff = s.robotOff;
+        state.bump = s.bump;
+        return state;
+    }
+
+    /**
+     * Return a new state that shares this state's map. This takes constant
+     * time; the map is only copied (one tile at a time) when it is changed.
+     */
+    @Override
+    public VacuumState successor() {
+
+        return new PersistentVacuumState(this);
+    }
+
+    @Override
+    public boolean hasDirt(int x, int y) {
+
+        long[] tile = dirt[y >>> TILE_SHIFT][x >>> TILE_SHIFT];
+        return tile != null && (tile[y & (TILE_SIZE - 1)] & (1L << x)) != 0;
+    }
+
+    @Override
+    public boolean hasObstacle(int x, int y) {
+
+        int i = y * width + x;
+        return (walls[i >>> 6] & (1L << i)) != 0;
+    }
+
+    @Override
+    public void removeDirt(int x, int y) {
+
+        if (hasDirt(x, y)) {
+            copyTile(x, y)[y & (TILE_SIZE - 1)] &= ~(1L << x);
+            numDirtyLocs--;
+        }
+    }
+
+    @Override
+    protected int getCell(int x, int y) {
+
+        if (hasObstacle(x, y))
+            return WALL;
+        else if (hasDirt(x, y))
+            return DIRT;
+        else
+            return CLEAR;
+    }
+
+    /**
+     * Change the contents of a location. Dirt changes copy a single tile, but
+     * adding or removing a wall copies the whole wall bitset, since walls are
+     * not expected to change once a simulation has started.
+     */
+    @Override
+    protected void setCell(int x, int y, int value) {
+
+        int i = y * width + x;
+        long bit = 1L << i;
+        if (((walls[i >>> 6] & bit) != 0) != (value == WALL)) {
+            walls = walls.clone();
+            walls[i >>> 6] ^= bit;
+        }
+        if (hasDirt(x, y) != (value == DIRT)) {
+            copyTile(x, y)[y & (TILE_SIZE - 1)] ^= 1L << x;
+        }
+    }
+
+    @Override
+    protected long[] getObstacleBits() {
+
+        return walls.clone();
+    }
+
+    @Override
+    protected void fillWalls(long[] keep) {
+
+        long[] newWalls = walls.clone();
+        for (int k = 0; k < newWalls.length; k++) {
+            newWalls[k] |= ~keep[k];
+        }
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                int cell = j * width + i;
+                if ((keep[cell >>> 6] & (1L << cell)) == 0 && hasDirt(i, j))
+                    copyTile(i, j)[j & (TILE_SIZE - 1)] &= ~(1L << i);
+            }
+        }
+        walls = newWalls;
+    }
+
+    @Override
+    protected int countDirtyLocs() {
+
+        int dirtCount = 0;
+        for (long[][] row : dirt) {
+            for (long[] tile : row) {
+                if (tile != null) {
+                    for (long bits : tile) {
+                        dirtCount += Long.bitCount(bits);
+                    }
+                }
+            }
+        }
+        return dirtCount;
+    }
+
+    /**
+     * Return the map corresponding to this state. Since the map is tiled, a
+     * new array is built on every call.
+     */
+    @Override
+    public int[][] getMap() {
+
+        int[][] map = new int[width][height];
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                map[i][j] = getCell(i, j);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Return the locations whose dirt differs between this state and another
+     * state of the same map, as x, y pairs. Tiles (and rows of tiles) that the
+     * two states share are skipped without being looked at, so comparing
+     * states a few actions apart takes time in proportion to the number of
+     * tiles rather than locations.
+     */
+    public int[] getDirtChanges(PersistentVacuumState other) {
+
+        if (other.width != width || other.height != height)
+            throw new IllegalArgumentException("Maps differ in size");
+        int[] changes = new int[16];
+        int n = 0;
+        for (int tileRow = 0; tileRow < dirt.length; tileRow++) {
+            if (dirt[tileRow] == other.dirt[tileRow])
+                continue;
+            for (int tileCol = 0; tileCol < dirt[tileRow].length; tileCol++) {
+                long[] a = dirt[tileRow][tileCol];
+                long[] b = other.dirt[tileRow][tileCol];
+                if (a == b)
+                    continue;
+                for (int j = 0; j < TILE_SIZE; j++) {
+                    long bits = (a == null ? 0 : a[j]) ^ (b == null ? 0 : b[j]);
+                    while (bits != 0) {
+                        if (n == changes.length)
+                            changes = Arrays.copyOf(changes, 2 * n);
+                        changes[n++] = (tileCol << TILE_SHIFT)
+                                + Long.numberOfTrailingZeros(bits);
+                        changes[n++] = (tileRow << TILE_SHIFT) + j;
+                        bits &= bits - 1;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(changes, n);
+    }
+
+    /**
+     * Return the tile containing a location, allocating it if necessary. This
+     * does not copy anything, so it may only be used while building a state
+     * that is not shared yet.
+     */
+    private long[] tileFor(int x, int y) {
+
+        long[][] row = dirt[y >>> TILE_SHIFT];
+        if (row[x >>> TILE_SHIFT] == null)
+            row[x >>> TILE_SHIFT] = new long[TILE_SIZE];
+        return row[x >>> TILE_SHIFT];
+    }
+
+    /**
+     * Replace the tile containing a location, and the arrays on the path to
+     * it, with private copies, and return the new tile. Every other tile stays
+     * shared with the states this one was derived from.
+     */
+    private long[] copyTile(int x, int y) {
+
+        int tileRow = y >>> TILE_SHIFT;
+        int tileCol = x >>> TILE_SHIFT;
+        long[] tile = dirt[tileRow][tileCol];
+        tile = (tile == null) ? new long[TILE_SIZE] : tile.clone();
+        long[][] row = dirt[tileRow].clone();
+        row[tileCol] = tile;
+        dirt = dirt.clone();
+        dirt[tileRow] = row;
+        return tile;
+    }
+}
@@ -0,0 +1,326 @@
+package vacworld;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import vacworld.TraceWriter.Keyframe;
+import agent.Action;
+import agent.Agent;
+import agent.Percept;
+
+/**
+ * Re-runs a trace written by TraceWriter. The whole trace is loaded into
+ * memory, and the recorded actions are fed back into a VacuumWorld without
+ * loading or running the original agent. The keyframes in the trace let
+ * seek() jump close to any step, and let verify() check that the replay
+ * matches what was recorded.
+ */
+public class Replay {
+
+    private final byte[] data;
+
+    private String agentId;
+    private boolean hasSeed;
+    private int seed;
+    private int width;
+    private int height;
+    private int initX;
+    private int initY;
+    private int initDir;
+    private long[] walls;
+    private long[] dirt;
+
+    /* Offset of the first opcode in the data. */
+    private int opcodeOffset;
+
+    private int numSteps;
+    private Keyframe[] keyframes;
+    private int recordedScore;
+
+    /** Construct a replay from the contents of a trace. */
+    public Replay(byte[] data) throws IOException {
+        this.data = data;
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                data));
+        if (data.length < 8 || in.readInt() != TraceWriter.MAGIC)
+            throw new IOException("Not a vacuum world trace");
+        int version = in.readShort();
+        if (version != TraceWriter.VERSION)
+            throw new IOException("Unsupported trace version " + version);
+        agentId = in.readUTF();
+        hasSeed = in.readBoolean();
+        seed = in.readInt();
+        in.readInt(); // keyframe interval
+        width = in.readInt();
+        height = in.readInt();
+        initX = in.readInt();
+        initY = in.readInt();
+        initDir = in.readByte();
+        walls = new long[(int) (((long) width * height + 63) >>> 6)];
+        dirt = new long[walls.length];
+        for (int i = 0; i < walls.length; i++) {
+            walls[i] = in.readLong();
+        }
+        for (int i = 0; i < dirt.length; i++) {
+            dirt[i] = in.readLong();
+        }
+        opcodeOffset = data.length - in.available();
+
+        // The footer's offset is stored in the last eight bytes
+        in = new DataInputStream(new ByteArrayInputStream(data,
+                data.length - 8, 8));
+        int footerOffset = (int) in.readLong();
+        in = new DataInputStream(new ByteArrayInputStream(data, footerOffset,
+                data.length - footerOffset));
+        numSteps = in.readInt();
+        keyframes = new Keyframe[in.readInt()];
+        for (int i = 0; i < keyframes.length; i++) {
+            keyframes[i] = Keyframe.read(in);
+        }
+        recordedScore = in.readInt();
+        if (opcodeOffset + numSteps != footerOffset)
+            throw new IOException("Corrupt trace");
+    }
+
+    /** Load a trace from a file. */
+    public static Replay load(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return new Replay(data);
+    }
+
+    /** Return the id of the agent that was recorded. */
+    public String getAgentId() {
+        return agentId;
+    }
+
+    /** Return true if the trace records the seed of the initial state. */
+    public boolean hasSeed() {
+        return hasSeed;
+    }
+
+    public int getSeed() {
+        return seed;
+    }
+
+    /** Return the number of actions in the trace. */
+    public int getNumSteps() {
+        return numSteps;
+    }
+
+    /** Return the score that was recorded at the end of the run. */
+    public int getRecordedScore() {
+        return recordedScore;
+    }
+
+    /** Return a new copy of the recorded initial state. */
+    public VacuumState getInitialState() {
+        PackedVacuumState state = new PackedVacuumState(width, height);
+        state.walls = walls.clone();
+        state.dirt = dirt.clone();
+        state.numDirtyLocs = state.countDirtyLocs();
+        state.agentX = initX;
+        state.agentY = initY;
+        state.agentDir = initDir;
+        return state;
+    }
+
+    /**
+     * Return a world in the state it was in after the given number of steps.
+     * The state is rebuilt from the nearest keyframe at or before the step,
+     * and the remaining actions are replayed, so the cost is bounded by the
+     * keyframe interval. The returned world can be stepped further to continue
+     * the replay.
+     */
+    public VacuumWorld seek(int step) {
+        if (step < 0 || step > numSteps)
+            throw new IllegalArgumentException("Step out of range: " + step);
+
+        // find the last keyframe at or before the step
+        int lo = 0;
+        int hi = keyframes.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (keyframes[mid].step <= step)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        Keyframe key = keyframes[lo];
+
+        VacuumState state = getInitialState();
+        for (int k = 0; k <= lo; k++) {
+            for (int i = 0; i < keyframes[k].numCleaned; i++) {
+                int cell = keyframes[k].cleaned[i];
+                state.removeDirt(cell % width, cell / width);
+            }
+        }
+        state.agentX = key.agentX;
+        state.agentY = key.agentY;
+        state.agentDir = key.agentDir;
+        state.bump = key.bump;
+        state.robotOff = key.robotOff;
+
+        ReplayAgent agent = new ReplayAgent(key.step);
+        VacuumWorld world = new VacuumWorld();
+        world.addAgent(agent);
+        world.start(state);
+        world.numMoves = key.numMoves;
+        world.numTurns = key.numTurns;
+        world.numSucks = key.numSucks;
+        world.numBumps = key.numBumps;
+        while (agent.next < step && !world.isComplete()) {
+            world.step();
+        }
+        return world;
+    }
+
+    /**
+     * Replay the whole trace, checking the world against every keyframe and
+     * the final score against the recorded one. Any mismatch is printed to
+     * the given stream.
+     *
+     * @return the replayed world if everything matched, or null otherwise.
+     */
+    public VacuumWorld verify(PrintStream out) {
+        VacuumWorld world = seek(0);
+        ReplayAgent agent = (ReplayAgent) world.getAgent();
+        boolean ok = true;
+
+        for (int k = 1; k < keyframes.length; k++) {
+            while (agent.next < keyframes[k].step && !world.isComplete()) {
+                world.step();
+            }
+            if (!new Keyframe(world, agent.next).matches(keyframes[k])) {
+                out.println("Mismatch at step " + keyframes[k].step);
+                ok = false;
+            }
+        }
+        if (agent.next != numSteps) {
+            out.println("Replay stopped after " + agent.next + " of "
+                    + numSteps + " steps");
+            ok = false;
+        }
+        if (world.getPerformanceMeasure() != recordedScore) {
+            out.println("Replayed score " + world.getPerformanceMeasure()
+                    + " does not match recorded score " + recordedScore);
+            ok = false;
+        }
+        return ok ? world : null;
+    }
+
+    /** An agent that plays back the recorded actions. */
+    private class ReplayAgent extends Agent implements BitPerceptAgent {
+
+        /* The index of the next action to play. */
+        int next;
+
+        ReplayAgent(int next) {
+            this.next = next;
+        }
+
+        @Override
+        public void see(Percept p) {
+        }
+
+        @Override
+        public void see(int perceptBits) {
+        }
+
+        @Override
+        public Action selectAction() {
+            if (next >= numSteps)
+                return ShutOff.INSTANCE;
+            return VacAction.forOpcode(data[opcodeOffset + next++] & 0xFF);
+        }
+
+        @Override
+        public String getId() {
+            return agentId;
+        }
+    }
+
+    /**
+     * Replays a trace. The usage is:
+     *
+     * <pre>
+     * java vacworld.Replay [-seek step] tracefile
+     * </pre>
+     *
+     * Without -seek, the whole trace is replayed and checked against the
+     * recorded keyframes and score. With -seek, the state after the given
+     * number of steps is displayed.
+     */
+    public static void main(String[] args) {
+        String fileName = null;
+        int seekStep = -1;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-seek") && i + 1 < args.length) {
+                try {
+                    seekStep = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException ex) {
+                    System.err
+                            .println("ERROR: Step passed with '-seek' must be an integer.");
+                    System.exit(1);
+                }
+            } else if (fileName == null) {
+                fileName = args[i];
+            } else {
+                fileName = null;
+                break;
+            }
+        }
+        if (fileName == null) {
+            System.err.println("ERROR: Invalid command line arguments.");
+            System.err
+                    .println("Usage: java vacworld.Replay [-seek step] tracefile");
+            System.exit(1);
+        }
+
+        Replay replay = null;
+        try {
+            replay = load(new File(fileName));
+        } catch (IOException e) {
+            System.err.println("ERROR: Unable to read trace " + fileName + ": "
+                    + e.getMessage());
+            System.exit(1);
+        }
+
+        System.out.println("Trace of " + replay.getAgentId() + " ("
+                + replay.getNumSteps() + " steps"
+                + (replay.hasSeed() ? ", seed " + replay.getSeed() : "")
+                + ")");
+        System.out.println();
+
+        if (seekStep >= 0) {
+            if (seekStep > replay.getNumSteps()) {
+                System.err.println("ERROR: The trace only has "
+                        + replay.getNumSteps() + " steps.");
+                System.exit(1);
+            }
+            VacuumWorld world = replay.seek(seekStep);
+            System.out.println("State after step " + seekStep + ":");
+            world.getState().display(System.out);
+            world.printScore(System.out);
+        } else {
+            VacuumWorld world = replay.verify(System.out);
+            if (world == null) {
+                System.out.println("*** Replay does not match the trace! ***");
+                System.exit(1);
+            }
+            world.printScore(System.out);
+            System.out.println("Replay matches the recorded score.");
+        }
+    }
+}
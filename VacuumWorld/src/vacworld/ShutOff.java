@@ -1,27 +1,29 @@
 package vacworld;
 
 import agent.Agent;
-import agent.Action;
 import agent.State;
 
 /** A vacuum cleaning world action that causes the agent to power down. */
-public final class ShutOff extends Action {
+public final class ShutOff extends VacAction {
+
+    /** The shared instance of this action. */
+    public static final ShutOff INSTANCE = new ShutOff();
 
     public ShutOff() {
     }
 
     /**
      * Return the state that results from the agent shutting off in the given
-     * state. In order to avoid creating unnecessary objects, we do not create a
-     * new state, but instead modify the old one. This would have to change if
-     * the Environment needs to maintain a history of states.
+     * state. The state returned by VacuumState.successor() is modified, which
+     * is the old state itself unless it is a persistent state that the
+     * Environment keeps as part of a history of states.
      */
     public State execute(Agent a, State s) {
 
         VacuumState state = null;
 
         if (s instanceof VacuumState)
-            state = (VacuumState) s;
+            state = ((VacuumState) s).successor();
         else
             System.out
                     .println("ERROR - Argument to ShutOff.execute() is not of type VacuumState");
@@ -30,6 +32,10 @@ public final class ShutOff extends Action {
         return state;
     }
 
+    public int getOpcode() {
+        return SHUT_OFF;
+    }
+
     public String toString() {
         return "SHUT OFF";
     }
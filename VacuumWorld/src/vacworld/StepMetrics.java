@@ -0,0 +1,190 @@
+package vacworld;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Timings of the phases of a simulation step: creating the percept, the
+ * agent's decision (see() and selectAction()), and applying the action
+ * (updateState()). A world only measures these when it has been given a
+ * StepMetrics object with VacuumWorld.setMetrics(); otherwise the step does
+ * not read the clock at all.
+ *
+ * <p>
+ * The counters can be updated from several threads, so one StepMetrics object
+ * can be shared by every world in a Tournament. The metrics can be published
+ * as a JMX MBean with register(), so they can be watched with jconsole while a
+ * simulation runs. In a multi-agent world, a step is a whole tick, and the
+ * decision phase is the time all the agents took together.
+ * </p>
+ */
+public class StepMetrics implements StepMetricsMBean {
+
+    private final LongAdder steps = new LongAdder();
+    private final LongAdder perceptNanos = new LongAdder();
+    private final LongAdder decisionNanos = new LongAdder();
+    private final LongAdder updateNanos = new LongAdder();
+    private final LongAdder bumps = new LongAdder();
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder actionLimitRuns = new LongAdder();
+    private final LongAdder overruns = new LongAdder();
+    private volatile long startTime = System.nanoTime();
+
+    private ObjectName objectName;
+
+    /**
+     * Record the phase times of one step, the number of bumps in it, and the
+     * number of decisions in it that overran the decision budget.
+     */
+    public void recordStep(long percept, long decision, long update,
+            int numBumps, int numOverruns) {
+        steps.increment();
+        perceptNanos.add(percept);
+        decisionNanos.add(decision);
+        updateNanos.add(update);
+        if (numBumps > 0)
+            bumps.add(numBumps);
+        if (numOverruns > 0)
+            overruns.add(numOverruns);
+    }
+
+    /**
+     * Record the end of a run, and whether it was stopped because an agent ran
+     * out of actions.
+     */
+    public void recordRun(boolean hitActionLimit) {
+        runs.increment();
+        if (hitActionLimit)
+            actionLimitRuns.increment();
+    }
+
+    public long getSteps() {
+        return steps.sum();
+    }
+
+    public long getPerceptNanos() {
+        return perceptNanos.sum();
+    }
+
+    public long getDecisionNanos() {
+        return decisionNanos.sum();
+    }
+
+    public long getUpdateNanos() {
+        return updateNanos.sum();
+    }
+
+    public double getMeanPerceptNanos() {
+        return mean(perceptNanos);
+    }
+
+    public double getMeanDecisionNanos() {
+        return mean(decisionNanos);
+    }
+
+    public double getMeanUpdateNanos() {
+        return mean(updateNanos);
+    }
+
+    public double getStepsPerSecond() {
+        long elapsed = System.nanoTime() - startTime;
+        return elapsed <= 0 ? 0 : steps.sum() * 1e9 / elapsed;
+    }
+
+    public long getBumps() {
+        return bumps.sum();
+    }
+
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    public long getActionLimitRuns() {
+        return actionLimitRuns.sum();
+    }
+
+    public long getOverruns() {
+        return overruns.sum();
+    }
+
+    public void reset() {
+        steps.reset();
+        perceptNanos.reset();
+        decisionNanos.reset();
+        updateNanos.reset();
+        bumps.reset();
+        runs.reset();
+        actionLimitRuns.reset();
+        overruns.reset();
+        startTime = System.nanoTime();
+    }
+
+    private double mean(LongAdder total) {
+        long n = steps.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    /**
+     * Publish these metrics in the platform MBean server under the name
+     * "vacworld:type=StepMetrics,name=<i>name</i>".
+     *
+     * @return true if the metrics were registered.
+     */
+    public boolean register(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName on = new ObjectName("vacworld:type=StepMetrics,name="
+                    + ObjectName.quote(name));
+            server.registerMBean(this, on);
+            objectName = on;
+            return true;
+        } catch (JMException e) {
+            System.err.println("ERROR: Unable to register step metrics: "
+                    + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Remove these metrics from the platform MBean server. */
+    public void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                        objectName);
+            } catch (JMException e) {
+                // already gone
+            }
+            objectName = null;
+        }
+    }
+
+    /** Print a summary of the metrics. */
+    public void printSummary(PrintStream out) {
+        long n = getSteps();
+        long total = getPerceptNanos() + getDecisionNanos() + getUpdateNanos();
+        out.println("Step metrics:");
+        out.println("------------");
+        out.println(String.format("  Steps: \t%d\t(%.0f steps/s)", n,
+                getStepsPerSecond()));
+        printPhase(out, "Percept", getPerceptNanos(), n, total);
+        printPhase(out, "Decision", getDecisionNanos(), n, total);
+        printPhase(out, "Update", getUpdateNanos(), n, total);
+        out.println("  Bumps: \t" + getBumps());
+        out.println("  Runs: \t" + getRuns() + "\t(" + getActionLimitRuns()
+                + " hit the action limit)");
+        out.println("  Overruns: \t" + getOverruns());
+        out.println();
+    }
+
+    private static void printPhase(PrintStream out, String name, long nanos,
+            long steps, long total) {
+        out.println(String.format("  %s: \tmean %.2f us\ttotal %.1f ms\t(%.0f%%)",
+                name, steps == 0 ? 0 : nanos / 1e3 / steps, nanos / 1e6,
+                total == 0 ? 0 : 100.0 * nanos / total));
+    }
+}
@@ -0,0 +1,41 @@
+package vacworld;
+
+/**
+ * The management interface of StepMetrics. Times are totals in nanoseconds
+ * unless they are means.
+ */
+public interface StepMetricsMBean {
+
+    public long getSteps();
+
+    public long getPerceptNanos();
+
+    public long getDecisionNanos();
+
+    public long getUpdateNanos();
+
+    public double getMeanPerceptNanos();
+
+    public double getMeanDecisionNanos();
+
+    public double getMeanUpdateNanos();
+
+    /** Steps per second of wall clock time since the metrics were reset. */
+    public double getStepsPerSecond();
+
+    public long getBumps();
+
+    public long getRuns();
+
+    /** Runs that were stopped because an agent ran out of actions. */
+    public long getActionLimitRuns();
+
+    /**
+     * Decisions that overran the decision budget, so the fallback action was
+     * used. They are counted as the steps happen.
+     */
+    public long getOverruns();
+
+    /** Set every count and total to zero. */
+    public void reset();
+}
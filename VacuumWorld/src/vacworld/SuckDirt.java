@@ -1,14 +1,16 @@
 package vacworld;
 
 import agent.Agent;
-import agent.Action;
 import agent.State;
 
 /**
  * A vacuum cleaning world action that causes the agent to suck up dirt from it
  * current location.
  */
-public final class SuckDirt extends Action {
+public final class SuckDirt extends VacAction {
+
+    /** The shared instance of this action. */
+    public static final SuckDirt INSTANCE = new SuckDirt();
 
     public SuckDirt() {
 
@@ -16,9 +18,9 @@ public final class SuckDirt extends Action {
 
     /**
      * Return the state that results from the agent sucking up dirt in the given
-     * state. In order to avoid creating unnecessary objects, we do not create a
-     * new state, but instead modify the old one. This would have to change if
-     * the Environment needs to maintain a history of states.
+     * state. The state returned by VacuumState.successor() is modified, which
+     * is the old state itself unless it is a persistent state that the
+     * Environment keeps as part of a history of states.
      */
     public State execute(Agent a, State s) {
 
@@ -26,7 +28,7 @@ public final class SuckDirt extends Action {
         VacuumState state = null;
 
         if (s instanceof VacuumState)
-            state = (VacuumState) s;
+            state = ((VacuumState) s).successor();
         else
             System.out
                     .println("ERROR - Argument to SuckDirt.execute() is not of type VacuumState");
@@ -43,6 +45,10 @@ public final class SuckDirt extends Action {
         return state;
     }
 
+    public int getOpcode() {
+        return SUCK_DIRT;
+    }
+
     public String toString() {
         return "SUCK DIRT";
     }
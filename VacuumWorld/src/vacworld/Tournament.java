@@ -0,0 +1,367 @@
+package vacworld;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+import agent.Agent;
+
+/**
+ * A headless runner that evaluates one or more agents over a range of random
+ * seeds. Every (seed, agent) pair is an independent simulation with its own
+ * VacuumWorld and VacuumState, so the runs are spread across all cores with a
+ * fork-join pool and the performance measures are aggregated per agent.
+ */
+public class Tournament {
+
+    /** Maximum number of seeds a single fork-join task runs sequentially. */
+    protected static final int SEEDS_PER_TASK = 8;
+
+    private final String[] agentNames;
+    private final int firstSeed;
+    private final int lastSeed;
+
+    // Room settings used to generate the random states
+    private int width = VacuumState.DEFAULT_WIDTH;
+    private int height = VacuumState.DEFAULT_HEIGHT;
+    private double wallDensity = VacuumState.WALL_CHANCE;
+    private double dirtDensity = VacuumState.DIRT_CHANCE
+            - VacuumState.WALL_CHANCE;
+
+    /* Decision budget for the agents in nanoseconds, or 0 for none */
+    private long budgetNanos = 0;
+
+    /* Step metrics shared by every run, or null */
+    private StepMetrics metrics;
+
+    /**
+     * Construct a tournament for the given agent classes over the inclusive
+     * seed range [firstSeed, lastSeed].
+     *
+     * @param agentNames
+     *            fully qualified agent class names (e.g. "dwp313.VacAgent").
+     * @param firstSeed
+     * @param lastSeed
+     */
+    public Tournament(String[] agentNames, int firstSeed, int lastSeed) {
+        this.agentNames = agentNames.clone();
+        this.firstSeed = firstSeed;
+        this.lastSeed = lastSeed;
+    }
+
+    /**
+     * Set the room size (including surrounding walls) and the wall and dirt
+     * densities of the generated states.
+     */
+    public void setRoom(int width, int height, double wallDensity,
+            double dirtDensity) {
+        this.width = width;
+        this.height = height;
+        this.wallDensity = wallDensity;
+        this.dirtDensity = dirtDensity;
+    }
+
+    /**
+     * Limit the time each agent may take per decision, as with
+     * VacuumWorld.setDecisionBudget(). The scores then include the agents'
+     * decision times.
+     */
+    public void setDecisionBudget(long budget, TimeUnit unit) {
+        this.budgetNanos = unit.toNanos(budget);
+    }
+
+    /**
+     * Measure the phases of every step in every run, adding them all to the
+     * given metrics.
+     */
+    public void setMetrics(StepMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Run every agent on every seed using the given pool, and return one
+     * aggregated score per agent (in the same order as the agent names).
+     */
+    public Score[] run(ForkJoinPool pool) {
+        return pool.invoke(new SeedRangeTask(firstSeed, lastSeed));
+    }
+
+    /**
+     * Run a single simulation to completion and return the finished world.
+     * Each call uses its own world, state and agent instance.
+     */
+    protected VacuumWorld runOne(String agentName, int seed) {
+        Agent agent = VacuumWorld.createAgent(agentName);
+        if (agent == null) {
+            throw new IllegalArgumentException("Unable to load class "
+                    + agentName);
+        }
+
+        VacuumWorld world = new VacuumWorld();
+        world.addAgent(agent);
+        if (budgetNanos > 0)
+            world.setDecisionBudget(budgetNanos, TimeUnit.NANOSECONDS);
+        world.setMetrics(metrics);
+        world.start(VacuumState.getRandomState(seed, width, height,
+                wallDensity, dirtDensity));
+        world.runToCompletion();
+        return world;
+    }
+
+    /** Recursively splits a seed range until it is small enough to run. */
+    private class SeedRangeTask extends RecursiveTask<Score[]> {
+
+        private static final long serialVersionUID = 6084372528791547302L;
+
+        private final int from;
+        private final int to;
+
+        SeedRangeTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Score[] compute() {
+            if ((long) to - from < SEEDS_PER_TASK) {
+                Score[] scores = newScores();
+                for (int seed = from; seed <= to; seed++) {
+                    for (int i = 0; i < agentNames.length; i++) {
+                        scores[i].add(runOne(agentNames[i], seed));
+                    }
+                }
+                return scores;
+            }
+
+            int mid = (int) (((long) from + to) / 2);
+            SeedRangeTask left = new SeedRangeTask(from, mid);
+            SeedRangeTask right = new SeedRangeTask(mid + 1, to);
+            left.fork();
+            Score[] scores = right.compute();
+            Score[] leftScores = left.join();
+            for (int i = 0; i < scores.length; i++) {
+                scores[i].merge(leftScores[i]);
+            }
+            return scores;
+        }
+
+        private Score[] newScores() {
+            Score[] scores = new Score[agentNames.length];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = new Score(agentNames[i]);
+            }
+            return scores;
+        }
+    }
+
+    /** Aggregated performance measures of one agent over many runs. */
+    public static class Score {
+        private final String agentName;
+        private int runs = 0;
+        private long total = 0;
+        private int min = Integer.MAX_VALUE;
+        private int max = Integer.MIN_VALUE;
+        private int timeouts = 0;
+        private long dirtLeft = 0;
+        private final LatencyHistogram decisions = new LatencyHistogram();
+        private long overruns = 0;
+
+        Score(String agentName) {
+            this.agentName = agentName;
+        }
+
+        void add(VacuumWorld world) {
+            int score = world.getPerformanceMeasure();
+            runs++;
+            total += score;
+            min = Math.min(min, score);
+            max = Math.max(max, score);
+            if (world.timedOut())
+                timeouts++;
+            dirtLeft += world.getNumDirtyLocs();
+            if (world.getWatchdog() != null) {
+                decisions.merge(world.getWatchdog().getLatencies());
+                overruns += world.getWatchdog().getNumOverruns();
+            }
+        }
+
+        void merge(Score other) {
+            runs += other.runs;
+            total += other.total;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            timeouts += other.timeouts;
+            dirtLeft += other.dirtLeft;
+            decisions.merge(other.decisions);
+            overruns += other.overruns;
+        }
+
+        public String getAgentName() {
+            return agentName;
+        }
+
+        public int getRuns() {
+            return runs;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public double getMean() {
+            return runs == 0 ? 0 : (double) total / runs;
+        }
+
+        public int getMin() {
+            return min;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        public int getTimeouts() {
+            return timeouts;
+        }
+
+        public long getDirtLeft() {
+            return dirtLeft;
+        }
+
+        /**
+         * Return the decision times over all runs. This is empty unless there
+         * was a decision budget.
+         */
+        public LatencyHistogram getDecisions() {
+            return decisions;
+        }
+
+        /** Return the number of decisions that overran the budget. */
+        public long getOverruns() {
+            return overruns;
+        }
+    }
+
+    /** Print a summary table of the given scores. */
+    public static void printScores(Score[] scores, PrintStream out) {
+        out.println("Tournament results:");
+        out.println("------------------");
+        out.println("  Agent\tRuns\tMean\tMin\tMax\tTimeouts\tDirt left");
+        for (Score s : scores) {
+            out.println(String.format("  %s\t%d\t%.2f\t%d\t%d\t%d\t%d",
+                    s.getAgentName(), s.getRuns(), s.getMean(), s.getMin(),
+                    s.getMax(), s.getTimeouts(), s.getDirtLeft()));
+        }
+        out.println();
+
+        if (scores.length > 0 && scores[0].getDecisions().getCount() > 0) {
+            out.println("Decision times:");
+            out.println("--------------");
+            for (Score s : scores) {
+                out.println("  " + s.getAgentName() + "\t"
+                        + s.getDecisions().summary() + "\t("
+                        + s.getOverruns() + " overruns)");
+            }
+            out.println();
+        }
+    }
+
+    /**
+     * Runs a tournament. The usage is:
+     *
+     * <pre>
+     * java vacworld.Tournament [-seeds first last] [-size width height] [-density wall dirt] [-threads n] [-budget ms] [-metrics] agentpack [agentpack ...]
+     * </pre>
+     *
+     * Each agent package must contain a VacAgent class. Every agent is run
+     * once on every seed in the inclusive range (0 to 999 by default), using
+     * as many worker threads as there are available processors unless
+     * -threads is given. The -size, -density, -budget and -metrics arguments
+     * work as they do for VacuumWorld; with -budget the agents' decision times
+     * are printed as well, and with -metrics the step phases of all the runs
+     * are measured together.
+     */
+    public static void main(String[] args) {
+
+        int firstSeed = 0;
+        int lastSeed = 999;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long budgetMillis = 0;
+        boolean useMetrics = false;
+        int width = VacuumState.DEFAULT_WIDTH;
+        int height = VacuumState.DEFAULT_HEIGHT;
+        double wallDensity = VacuumState.WALL_CHANCE;
+        double dirtDensity = VacuumState.DIRT_CHANCE - VacuumState.WALL_CHANCE;
+        ArrayList<String> names = new ArrayList<String>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-seeds")) {
+                    firstSeed = Integer.parseInt(args[++i]);
+                    lastSeed = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-size")) {
+                    width = Integer.parseInt(args[++i]);
+                    height = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-density")) {
+                    wallDensity = Double.parseDouble(args[++i]);
+                    dirtDensity = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("-threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-budget")) {
+                    budgetMillis = Long.parseLong(args[++i]);
+                } else if (args[i].equals("-metrics")) {
+                    useMetrics = true;
+                } else {
+                    names.add(args[i] + ".VacAgent");
+                }
+            }
+        } catch (RuntimeException ex) {
+            names.clear();
+        }
+        if (names.isEmpty() || lastSeed < firstSeed || threads < 1) {
+            System.err.println("ERROR: Invalid command line arguments.");
+            System.err
+                    .println("Usage: java vacworld.Tournament [-seeds first last] [-size width height] [-density wall dirt] [-threads n] [-budget ms] [-metrics] agentpack [agentpack ...]");
+            System.exit(1);
+        }
+
+        // Make sure every agent can be loaded before starting any work
+        for (String name : names) {
+            if (VacuumWorld.createAgent(name) == null) {
+                System.err.println("ERROR: Unable to load class " + name);
+                System.exit(1);
+            }
+        }
+
+        System.out.println("The Vacuum Cleaner World Tournament");
+        System.out.println("-----------------------------------");
+        System.out.println("Seeds " + firstSeed + " to " + lastSeed + " in a "
+                + width + "x" + height + " room on " + threads + " threads");
+        System.out.println();
+
+        Tournament tournament = new Tournament(
+                names.toArray(new String[names.size()]), firstSeed, lastSeed);
+        tournament.setRoom(width, height, wallDensity, dirtDensity);
+        if (budgetMillis > 0)
+            tournament.setDecisionBudget(budgetMillis, TimeUnit.MILLISECONDS);
+        StepMetrics metrics = null;
+        if (useMetrics) {
+            metrics = new StepMetrics();
+            metrics.register("Tournament");
+            tournament.setMetrics(metrics);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long startTime = System.nanoTime();
+        Score[] scores = tournament.run(pool);
+        long elapsed = System.nanoTime() - startTime;
+        pool.shutdown();
+
+        printScores(scores, System.out);
+        if (metrics != null)
+            metrics.printSummary(System.out);
+        System.out.println(String.format("Finished in %.2f s",
+                elapsed / 1e9));
+    }
+}
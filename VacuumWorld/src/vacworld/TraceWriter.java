@@ -0,0 +1,273 @@
+package vacworld;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Writes a compact binary trace of a VacuumWorld run, which can be read back
+ * with Replay. A trace has three parts:
+ *
+ * <ol>
+ * <li>A header with the agent id, the seed (if known), and the complete
+ * initial map as wall and dirt bitsets.</li>
+ * <li>One byte per action: its opcode, or 0xFF for an invalid action.</li>
+ * <li>A footer with a keyframe every keyframeInterval steps and after the last
+ * step, followed by the recorded score. Each keyframe holds the agent's
+ * position and direction, the dirt count, the scoring counters and the
+ * locations cleaned since the previous keyframe. The footer's offset is
+ * written as the last eight bytes of the trace.</li>
+ * </ol>
+ *
+ * A trace writer records a single run.
+ */
+public class TraceWriter {
+
+    /** Magic number at the start of every trace ("VWTR"). */
+    public static final int MAGIC = 0x56575452;
+
+    /** Version of the trace format. */
+    public static final int VERSION = 1;
+
+    /** Byte recorded for an action that is not a vacuum world action. */
+    public static final int INVALID_OPCODE = 0xFF;
+
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 256;
+
+    private final DataOutputStream out;
+    private final int keyframeInterval;
+    private boolean hasSeed = false;
+    private int seed;
+
+    private int numSteps;
+    private int lastDirtCount;
+    private boolean finished;
+    private final ArrayList<Keyframe> keyframes = new ArrayList<Keyframe>();
+    private Keyframe pending;
+
+    /** Construct a trace writer with the default keyframe interval. */
+    public TraceWriter(OutputStream out) {
+        this(out, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /** Construct a trace writer that writes a keyframe every interval steps. */
+    public TraceWriter(OutputStream out, int keyframeInterval) {
+        if (keyframeInterval < 1)
+            throw new IllegalArgumentException("Invalid keyframe interval: "
+                    + keyframeInterval);
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Record the seed used to generate the initial state. This is only
+     * informational, and must be called before the simulation starts.
+     */
+    public void setSeed(int seed) {
+        this.hasSeed = true;
+        this.seed = seed;
+    }
+
+    /** Write the header. Called by VacuumWorld.start(). */
+    void begin(VacuumWorld world, String agentId) throws IOException {
+        if (!keyframes.isEmpty())
+            throw new IllegalStateException("Trace already started");
+        VacuumState state = world.getState();
+        int width = state.getWidth();
+        int height = state.getHeight();
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeUTF(agentId);
+        out.writeBoolean(hasSeed);
+        out.writeInt(seed);
+        out.writeInt(keyframeInterval);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(state.getAgentX());
+        out.writeInt(state.getAgentY());
+        out.writeByte(state.getAgentDir());
+
+        writeBits(state, VacuumState.WALL);
+        writeBits(state, VacuumState.DIRT);
+
+        numSteps = 0;
+        lastDirtCount = state.getNumDirtyLocs();
+        finished = false;
+        keyframes.add(new Keyframe(world, 0));
+        pending = new Keyframe();
+    }
+
+    /**
+     * Write a row-major bitset of the locations that contain the given value.
+     */
+    private void writeBits(VacuumState state, int value) throws IOException {
+        long bits = 0;
+        int cell = 0;
+        for (int j = 0; j < state.getHeight(); j++) {
+            for (int i = 0; i < state.getWidth(); i++) {
+                if (state.getCell(i, j) == value)
+                    bits |= 1L << cell;
+                if ((++cell & 63) == 0) {
+                    out.writeLong(bits);
+                    bits = 0;
+                }
+            }
+        }
+        if ((cell & 63) != 0)
+            out.writeLong(bits);
+    }
+
+    /** Record one action. Called by VacuumWorld.updateState(). */
+    void record(VacuumWorld world, int opcode) throws IOException {
+        VacuumState state = world.getState();
+        out.writeByte(opcode < 0 ? INVALID_OPCODE : opcode);
+        numSteps++;
+
+        // Sucking dirt does not move the agent, so the cleaned location is
+        // where the agent is now.
+        if (state.getNumDirtyLocs() < lastDirtCount) {
+            pending.addCleaned(state.getAgentY() * state.getWidth()
+                    + state.getAgentX());
+        }
+        lastDirtCount = state.getNumDirtyLocs();
+
+        if (numSteps % keyframeInterval == 0)
+            addKeyframe(world);
+    }
+
+    /**
+     * Write the footer and flush the trace. Called by VacuumWorld once the
+     * simulation is complete; calling it again has no effect.
+     */
+    void finish(VacuumWorld world) throws IOException {
+        if (finished)
+            return;
+        finished = true;
+        if (keyframes.get(keyframes.size() - 1).step != numSteps)
+            addKeyframe(world);
+
+        long footerOffset = out.size();
+        out.writeInt(numSteps);
+        out.writeInt(keyframes.size());
+        for (Keyframe k : keyframes) {
+            k.write(out);
+        }
+        out.writeInt(world.getPerformanceMeasure());
+        out.writeLong(footerOffset);
+        out.flush();
+    }
+
+    /** Close the underlying stream. */
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void addKeyframe(VacuumWorld world) {
+        Keyframe k = new Keyframe(world, numSteps);
+        k.cleaned = pending.cleaned;
+        k.numCleaned = pending.numCleaned;
+        keyframes.add(k);
+        pending = new Keyframe();
+    }
+
+    /** A snapshot of the world after a given number of steps. */
+    static final class Keyframe {
+        int step;
+        int agentX;
+        int agentY;
+        int agentDir;
+        boolean bump;
+        boolean robotOff;
+        int numDirtyLocs;
+        int numMoves;
+        int numTurns;
+        int numSucks;
+        int numBumps;
+
+        /** Locations (y * width + x) cleaned since the previous keyframe. */
+        int[] cleaned = new int[0];
+        int numCleaned = 0;
+
+        Keyframe() {
+        }
+
+        Keyframe(VacuumWorld world, int step) {
+            VacuumState state = world.getState();
+            this.step = step;
+            agentX = state.getAgentX();
+            agentY = state.getAgentY();
+            agentDir = state.getAgentDir();
+            bump = state.bumped();
+            robotOff = state.isRobotOff();
+            numDirtyLocs = state.getNumDirtyLocs();
+            numMoves = world.numMoves;
+            numTurns = world.numTurns;
+            numSucks = world.numSucks;
+            numBumps = world.numBumps;
+        }
+
+        void addCleaned(int cell) {
+            if (numCleaned == cleaned.length) {
+                int[] grown = new int[Math.max(8, cleaned.length * 2)];
+                System.arraycopy(cleaned, 0, grown, 0, numCleaned);
+                cleaned = grown;
+            }
+            cleaned[numCleaned++] = cell;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(step);
+            out.writeInt(agentX);
+            out.writeInt(agentY);
+            out.writeByte(agentDir | (bump ? 4 : 0) | (robotOff ? 8 : 0));
+            out.writeInt(numDirtyLocs);
+            out.writeInt(numMoves);
+            out.writeInt(numTurns);
+            out.writeInt(numSucks);
+            out.writeInt(numBumps);
+            out.writeInt(numCleaned);
+            for (int i = 0; i < numCleaned; i++) {
+                out.writeInt(cleaned[i]);
+            }
+        }
+
+        static Keyframe read(DataInputStream in) throws IOException {
+            Keyframe k = new Keyframe();
+            k.step = in.readInt();
+            k.agentX = in.readInt();
+            k.agentY = in.readInt();
+            int flags = in.readByte();
+            k.agentDir = flags & 3;
+            k.bump = (flags & 4) != 0;
+            k.robotOff = (flags & 8) != 0;
+            k.numDirtyLocs = in.readInt();
+            k.numMoves = in.readInt();
+            k.numTurns = in.readInt();
+            k.numSucks = in.readInt();
+            k.numBumps = in.readInt();
+            k.numCleaned = in.readInt();
+            k.cleaned = new int[k.numCleaned];
+            for (int i = 0; i < k.numCleaned; i++) {
+                k.cleaned[i] = in.readInt();
+            }
+            return k;
+        }
+
+        /**
+         * Return true if this keyframe matches another one. The cleaned
+         * locations are not compared.
+         */
+        boolean matches(Keyframe k) {
+            return step == k.step && agentX == k.agentX && agentY == k.agentY
+                    && agentDir == k.agentDir && bump == k.bump
+                    && robotOff == k.robotOff
+                    && numDirtyLocs == k.numDirtyLocs
+                    && numMoves == k.numMoves && numTurns == k.numTurns
+                    && numSucks == k.numSucks && numBumps == k.numBumps;
+        }
+    }
+}
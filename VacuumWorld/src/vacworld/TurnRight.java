@@ -1,14 +1,16 @@
 package vacworld;
 
 import agent.Agent;
-import agent.Action;
 import agent.State;
 
 /**
  * A vacuum cleaning world action that causes the agent to turn 90 degrees to
  * the right.
  */
-public final class TurnRight extends Action {
+public final class TurnRight extends VacAction {
+
+    /** The shared instance of this action. */
+    public static final TurnRight INSTANCE = new TurnRight();
 
     public TurnRight() {
 
@@ -16,9 +18,9 @@ public final class TurnRight extends Action {
 
     /**
      * Return the state that results from the agent turning right in the given
-     * state. In order to avoid creating unnecessary objects, we do not create a
-     * new state, but instead modify the old one. This would have to change if
-     * the Environment needs to maintain a history of states.
+     * state. The state returned by VacuumState.successor() is modified, which
+     * is the old state itself unless it is a persistent state that the
+     * Environment keeps as part of a history of states.
      */
     public State execute(Agent a, State s) {
 
@@ -27,7 +29,7 @@ public final class TurnRight extends Action {
         VacuumState state = null;
 
         if (s instanceof VacuumState)
-            state = (VacuumState) s;
+            state = ((VacuumState) s).successor();
         else
             System.out
                     .println("ERROR - Argument to TurnRight.execute() is not of type VacuumState");
@@ -47,6 +49,10 @@ public final class TurnRight extends Action {
         return state;
     }
 
+    public int getOpcode() {
+        return TURN_RIGHT;
+    }
+
     public String toString() {
         return "TURN RIGHT";
     }
@@ -0,0 +1,58 @@
+package vacworld;
+
+import agent.Action;
+
+/**
+ * The superclass of all actions in the vacuum cleaning world. Each action
+ * carries a small integer opcode so that the environment can dispatch on it
+ * with a switch rather than a chain of instanceof tests. Actions have no
+ * state, so agents should use the shared INSTANCE of each action class (or
+ * forOpcode()) instead of creating new ones.
+ */
+public abstract class VacAction extends Action {
+
+    /* Opcodes for each of the vacuum world actions. */
+    public static final int SHUT_OFF = 0;
+    public static final int GO_FORWARD = 1;
+    public static final int TURN_LEFT = 2;
+    public static final int TURN_RIGHT = 3;
+    public static final int SUCK_DIRT = 4;
+
+    /** The number of opcodes. Valid opcodes are 0 to NUM_OPCODES - 1. */
+    public static final int NUM_OPCODES = 5;
+
+    /** Return the opcode that identifies this action. */
+    public abstract int getOpcode();
+
+    /**
+     * Return the opcode of an action, or -1 if it is not a vacuum world
+     * action.
+     */
+    public static int opcodeOf(Action action) {
+        if (action instanceof VacAction)
+            return ((VacAction) action).getOpcode();
+        else
+            return -1;
+    }
+
+    /**
+     * Return the shared instance of the action with the given opcode, or null
+     * if the opcode is invalid.
+     */
+    public static VacAction forOpcode(int opcode) {
+        switch (opcode) {
+        case SHUT_OFF:
+            return ShutOff.INSTANCE;
+        case GO_FORWARD:
+            return GoForward.INSTANCE;
+        case TURN_LEFT:
+            return TurnLeft.INSTANCE;
+        case TURN_RIGHT:
+            return TurnRight.INSTANCE;
+        case SUCK_DIRT:
+            return SuckDirt.INSTANCE;
+        default:
+            return null;
+        }
+    }
+}
@@ -3,9 +3,22 @@ package vacworld;
 import agent.Percept;
 import agent.Agent;
 
-/** A percept in the vacuum cleaning world. */
+/**
+ * A percept in the vacuum cleaning world. A percept can also be encoded as an
+ * int bitmask of DIRT_BIT, OBSTACLE_BIT and BUMP_BIT, which is what the world
+ * passes to agents that implement BitPerceptAgent.
+ */
 public class VacPercept extends Percept {
 
+    /** Bit that is set if the agent is over dirt. */
+    public static final int DIRT_BIT = 1;
+
+    /** Bit that is set if the agent is facing an obstacle. */
+    public static final int OBSTACLE_BIT = 2;
+
+    /** Bit that is set if the agent bumped into an obstacle. */
+    public static final int BUMP_BIT = 4;
+
     private boolean dirt;
     private boolean obstacle;
     private boolean bump;
@@ -20,10 +33,26 @@ public class VacPercept extends Percept {
     public VacPercept(VacuumState state, Agent agent) {
 
         super(state, agent);
+        setBits(encode(state));
+    }
+
+    /** Construct a vacuum world percept from its bitmask encoding. */
+    public VacPercept(int bits) {
+
+        super(null, null);
+        setBits(bits);
+    }
+
+    /**
+     * Return the percept for the agent in the given state, encoded as a
+     * bitmask. This does not create any objects.
+     */
+    public static int encode(VacuumState state) {
 
         int x, y;
         int viewX, viewY;
         int dir;
+        int bits = 0;
 
         x = state.getAgentX();
         y = state.getAgentY();
@@ -31,23 +60,38 @@ public class VacPercept extends Percept {
 
         // determine dirt
         if (state.hasDirt(x, y))
-            dirt = true;
-        else
-            dirt = false;
+            bits |= DIRT_BIT;
 
         // determine obstacle
         viewX = x + Direction.DELTA_X[dir];
         viewY = y + Direction.DELTA_Y[dir];
         if (state.hasObstacle(viewX, viewY))
-            obstacle = true;
-        else
-            obstacle = false;
+            bits |= OBSTACLE_BIT;
 
         // determine bump
         if (state.bumped())
-            bump = true;
-        else
-            bump = false;
+            bits |= BUMP_BIT;
+        return bits;
+    }
+
+    /** Returns the bitmask encoding of this percept. */
+    public int getBits() {
+
+        int bits = 0;
+        if (dirt)
+            bits |= DIRT_BIT;
+        if (obstacle)
+            bits |= OBSTACLE_BIT;
+        if (bump)
+            bits |= BUMP_BIT;
+        return bits;
+    }
+
+    private void setBits(int bits) {
+
+        dirt = (bits & DIRT_BIT) != 0;
+        obstacle = (bits & OBSTACLE_BIT) != 0;
+        bump = (bits & BUMP_BIT) != 0;
     }
 
     /** Returns true if the percept reflects that the agent is over dirt. */
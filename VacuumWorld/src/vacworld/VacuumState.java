@@ -1,7 +1,6 @@
 package vacworld;
 
 import java.io.PrintStream;
-import java.util.ArrayList;
 import java.util.Random;
 
 import agent.State;
@@ -36,8 +35,16 @@ public class VacuumState extends State {
             { WALL, WALL, WALL, WALL, CLEAR, CLEAR, WALL },
             { WALL, WALL, WALL, WALL, WALL, WALL, WALL } };
 
-    protected static double DIRT_CHANCE = 0.37;
-    protected static double WALL_CHANCE = 0.22;
+    /**
+     * A random roll at or below this makes a location of a random map dirty,
+     * unless it is a wall. The density of dirt is DIRT_CHANCE - WALL_CHANCE.
+     */
+    public static final double DIRT_CHANCE = 0.37;
+
+    /**
+     * A random roll at or below this makes a location of a random map a wall.
+     */
+    public static final double WALL_CHANCE = 0.22;
 
     /* Variables for the state of the agent. */
     protected int agentX;
@@ -59,8 +66,17 @@ public class VacuumState extends State {
     /** Width of the map, including surrounding walls of the room. */
     protected int width;
 
-    static final int DEFAULT_HEIGHT = 7;
-    static final int DEFAULT_WIDTH = 7;
+    /** The height of a random map unless another is given. */
+    public static final int DEFAULT_HEIGHT = 7;
+
+    /** The width of a random map unless another is given. */
+    public static final int DEFAULT_WIDTH = 7;
+
+    /**
+     * Randomly generated maps with more locations than this are stored in a
+     * PackedVacuumState.
+     */
+    public static final int PACKED_THRESHOLD = 1 << 20;
 
     /** Return the default initial state for the vacuum world. */
     public static VacuumState getInitState() {
@@ -108,6 +124,20 @@ public class VacuumState extends State {
         return getRandomState(rgen);
     }
 
+    /**
+     * Return a random initial state of the given size using a specific seed.
+     * The dimensions include the surrounding walls of the room. Each interior
+     * location is a wall with probability wallDensity, dirty with probability
+     * dirtDensity, and clear otherwise. This method fills in areas that are
+     * impossible to reach with walls.
+     */
+    public static VacuumState getRandomState(int randSeed, int width,
+            int height, double wallDensity, double dirtDensity) {
+        Random rgen = new Random(randSeed);
+        return getRandomState(rgen, width, height, wallDensity, wallDensity
+                + dirtDensity);
+    }
+
     /**
      * A helper class for the other getRandomState() methods. Accepts a random
      * number generator and uses this to generate a random initial state for the
@@ -116,35 +146,53 @@ public class VacuumState extends State {
      * reach with walls.
      */
     protected static VacuumState getRandomState(Random rgen) {
+        return getRandomState(rgen, DEFAULT_WIDTH, DEFAULT_HEIGHT,
+                WALL_CHANCE, DIRT_CHANCE);
+    }
+
+    /**
+     * Generate a random state of the given size. A random roll at or below
+     * wallChance makes a location a wall; otherwise a roll at or below
+     * dirtChance makes it dirty. Maps larger than PACKED_THRESHOLD locations
+     * are stored in a PackedVacuumState.
+     */
+    protected static VacuumState getRandomState(Random rgen, int width,
+            int height, double wallChance, double dirtChance) {
 
         VacuumState state;
         float roll;
 
-        state = new VacuumState();
-        state.agentX = rgen.nextInt(DEFAULT_WIDTH - 2) + 1;
-        state.agentY = rgen.nextInt(DEFAULT_HEIGHT - 2) + 1;
+        if (width < 3 || height < 3)
+            throw new IllegalArgumentException("Map too small: " + width + "x"
+                    + height);
+
+        if ((long) width * height > PACKED_THRESHOLD) {
+            state = new PackedVacuumState(width, height);
+        } else {
+            state = new VacuumState();
+            state.height = height;
+            state.width = width;
+            state.map = new int[width][height];
+        }
+        state.agentX = rgen.nextInt(width - 2) + 1;
+        state.agentY = rgen.nextInt(height - 2) + 1;
         state.agentDir = INIT_DIR;
         state.numDirtyLocs = 0;
-        state.height = DEFAULT_HEIGHT;
-        state.width = DEFAULT_WIDTH;
-        state.map = new int[state.width][state.height];
-        for (int i = 0; i < state.width; i++) {
-            for (int j = 0; j < state.height; j++) {
-                if (i == 0 || i == (state.width - 1))
-                    state.map[i][j] = WALL;
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                if (i == 0 || i == (width - 1))
+                    state.setCell(i, j, WALL);
                 else {
-                    if (j == 0 || j == (state.height - 1))
-                        state.map[i][j] = WALL;
+                    if (j == 0 || j == (height - 1))
+                        state.setCell(i, j, WALL);
                     else {
                         roll = rgen.nextFloat();
                         if ((i != state.agentX || j != state.agentY)
-                                && roll <= WALL_CHANCE) {
-                            state.map[i][j] = WALL;
-                        } else if (roll <= DIRT_CHANCE) {
-                            state.map[i][j] = DIRT;
-                            // state.numDirtyLocs++;
-                        } else
-                            state.map[i][j] = CLEAR;
+                                && roll <= wallChance) {
+                            state.setCell(i, j, WALL);
+                        } else if (roll <= dirtChance) {
+                            state.setCell(i, j, DIRT);
+                        } // new maps start out CLEAR
                     }
                 }
             }
@@ -157,31 +205,103 @@ public class VacuumState extends State {
         return state;
     }
 
+    /**
+     * Replace every location that the agent cannot reach with a wall. This is
+     * a breadth-first search over flat location indices (y * width + x) using
+     * a primitive queue and bitsets for obstacles and visited locations, so it
+     * runs in linear time.
+     * 
+     * The queue is a ring buffer that starts out the size of the room's
+     * perimeter, which is about as wide as the search front gets in an open
+     * room, and doubles when a maze makes the front wider. It only ever holds
+     * the front, so it stays far smaller than a queue of every location (4
+     * bytes per location, 64 MB for a 4096x4096 room).
+     */
     public static void fillUnreachableSquares(VacuumState state) {
+        int width = state.width;
+        int cells = width * state.height;
+
         // find reachable squares
-        ArrayList<Square> reachable = new ArrayList<Square>();
-        ArrayList<Square> frontier = new ArrayList<Square>();
-        Square start = new Square(state.agentX, state.agentY);
-        reachable.add(start);
-        frontier.add(start);
-        while (!frontier.isEmpty()) {
-            Square next = frontier.remove(0);
+        long[] blocked = state.getObstacleBits();
+        long[] reachable = new long[blocked.length];
+        int[] frontier = new int[Integer.highestOneBit(2 * (width
+                + state.height)) << 1];
+        int mask = frontier.length - 1;
+        int head = 0;
+        int size = 0;
+        int start = state.agentY * width + state.agentX;
+        reachable[start >>> 6] |= 1L << start;
+        frontier[size++] = start;
+        while (size > 0) {
+            int next = frontier[head];
+            head = (head + 1) & mask;
+            size--;
+            int x = next % width;
             for (int i = 0; i < 4; i++) {
-                Square gen = new Square(next.x + Direction.DELTA_X[i], next.y
-                        + Direction.DELTA_Y[i]);
-                if (state.map[gen.x][gen.y] != WALL && !reachable.contains(gen)) {
-                    frontier.add(gen);
-                    reachable.add(gen);
+                int gen;
+                if (i == Direction.NORTH && next >= width)
+                    gen = next - width;
+                else if (i == Direction.EAST && x < width - 1)
+                    gen = next + 1;
+                else if (i == Direction.SOUTH && next + width < cells)
+                    gen = next + width;
+                else if (i == Direction.WEST && x > 0)
+                    gen = next - 1;
+                else
+                    continue;
+                long bit = 1L << gen;
+                if (((reachable[gen >>> 6] | blocked[gen >>> 6]) & bit) == 0) {
+                    reachable[gen >>> 6] |= bit;
+                    if (size == frontier.length) {
+                        // Unwrap the queue into a buffer twice the size
+                        int[] grown = new int[2 * frontier.length];
+                        System.arraycopy(frontier, head, grown, 0,
+                                frontier.length - head);
+                        System.arraycopy(frontier, 0, grown, frontier.length
+                                - head, head);
+                        frontier = grown;
+                        mask = frontier.length - 1;
+                        head = 0;
+                    }
+                    frontier[(head + size) & mask] = gen;
+                    size++;
                 }
             }
         }
 
         // replace unreachable squares with walls
-        for (int i = 0; i < state.width; i++) {
-            for (int j = 0; j < state.height; j++) {
-                Square temp = new Square(i, j);
-                if (!reachable.contains(temp))
-                    state.map[i][j] = WALL;
+        state.fillWalls(reachable);
+    }
+
+    /**
+     * Return a bitset of the locations that contain an obstacle, indexed in
+     * row-major order (y * width + x). The result may be modified by the
+     * caller.
+     */
+    protected long[] getObstacleBits() {
+
+        long[] bits = new long[(width * height + 63) >>> 6];
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                int cell = j * width + i;
+                if (hasObstacle(i, j))
+                    bits[cell >>> 6] |= 1L << cell;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Put a wall in every location whose bit is not set in the given row-major
+     * bitset. This does not update the dirty location count.
+     */
+    protected void fillWalls(long[] keep) {
+
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                int cell = j * width + i;
+                if ((keep[cell >>> 6] & (1L << cell)) == 0)
+                    setCell(i, j, WALL);
             }
         }
     }
@@ -268,11 +388,21 @@ public class VacuumState extends State {
         this.bump = bump;
     }
 
+    /**
+     * Return the state that an action should modify. Ordinary states are
+     * changed in place, so this returns the state itself; persistent states
+     * return a new state so that this one is left unchanged.
+     */
+    public VacuumState successor() {
+
+        return this;
+    }
+
     /** Remove dirt from the specified location. */
     public void removeDirt(int x, int y) {
 
-        if (map[x][y] == DIRT) {
-            map[x][y] = CLEAR;
+        if (getCell(x, y) == DIRT) {
+            setCell(x, y, CLEAR);
             numDirtyLocs--;
         }
     }
@@ -280,7 +410,7 @@ public class VacuumState extends State {
     /** Return true if the specified location has dirt in it. */
     public boolean hasDirt(int x, int y) {
 
-        if (map[x][y] == DIRT)
+        if (getCell(x, y) == DIRT)
             return true;
         else
             return false;
@@ -289,12 +419,31 @@ public class VacuumState extends State {
     /** Return true if the specified location has an obstacle in it. */
     public boolean hasObstacle(int x, int y) {
 
-        if (map[x][y] == WALL)
+        if (getCell(x, y) == WALL)
             return true;
         else
             return false;
     }
 
+    /**
+     * Return the contents (CLEAR, DIRT or WALL) of the specified location.
+     * Subclasses that use a different backing for the map override this and
+     * setCell().
+     */
+    protected int getCell(int x, int y) {
+
+        return map[x][y];
+    }
+
+    /**
+     * Change the contents of the specified location. This does not update the
+     * dirty location count.
+     */
+    protected void setCell(int x, int y, int value) {
+
+        map[x][y] = value;
+    }
+
     /**
      * Return true if the agent bumped into an obstacle on its previous move.
      */
@@ -397,12 +546,12 @@ public class VacuumState extends State {
     /**
      * A utility method used to count how many dirty squares are in the state.
      */
-    private int countDirtyLocs() {
+    protected int countDirtyLocs() {
 
         int dirtCount = 0;
         for (int dx = 1; dx < width; dx++) {
             for (int dy = 1; dy < height; dy++) {
-                if (map[dx][dy] == DIRT)
+                if (getCell(dx, dy) == DIRT)
                     dirtCount++;
             }
         }
@@ -429,24 +578,3 @@ public class VacuumState extends State {
         return "A";
     }
 }
-
-/** This class is used to encapsulate the notion of a position in the map. */
-class Square {
-    int x;
-    int y;
-
-    Square(int x, int y) {
-        this.x = x;
-        this.y = y;
-    }
-
-    public boolean equals(Object o) {
-        if (!(o instanceof Square))
-            return false;
-        Square s = (Square) o;
-        if (s.x == x && s.y == y)
-            return true;
-        else
-            return false;
-    }
-}
@@ -1,9 +1,14 @@
 package vacworld;
 
 import java.io.BufferedReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
@@ -21,9 +26,11 @@ import agent.State;
  */
 public class VacuumWorld extends Environment {
 
+    /** The action limit for the default 7x7 room. */
     protected static final int MAX_ACTIONS = 200;
 
-    private static String agentName;
+    /** The action limit for the current state, scaled by its size. */
+    protected int maxActions = MAX_ACTIONS;
 
     // scoring information
     protected int numMoves = 0;
@@ -34,8 +41,32 @@ public class VacuumWorld extends Environment {
     protected PrintStream output;
     protected VacPercept currentPercept;
 
+    /** The bitmask encoding of the current percept, or -1 before any step. */
+    protected int currentPerceptBits = -1;
+
     protected Action currentAction;
 
+    /** Whether every state of a run should be kept. */
+    protected boolean keepHistory = false;
+
+    /** The states of the current run, oldest first, if keepHistory is set. */
+    protected ArrayList<VacuumState> history;
+
+    /** Writes a binary trace of the run, if set. */
+    protected TraceWriter trace;
+
+    /** The time limit for each decision in nanoseconds, or 0 for none. */
+    protected long decisionBudgetNanos = 0;
+
+    /** The action used when a decision overruns its budget. */
+    protected Action fallbackAction = DecisionWatchdog.DEFAULT_FALLBACK;
+
+    /** Enforces the decision budget for the current run, if there is one. */
+    protected DecisionWatchdog watchdog;
+
+    /** Records the time taken by each phase of a step, if set. */
+    protected StepMetrics metrics;
+
     public VacuumWorld() {
         output = System.out;
     }
@@ -74,7 +105,7 @@ public class VacuumWorld extends Environment {
     }
 
     protected boolean timedOut() {
-        if (getNumActions() >= MAX_ACTIONS)
+        if (getNumActions() >= maxActions)
             return true;
         else
             return false;
@@ -95,27 +126,51 @@ public class VacuumWorld extends Environment {
         }
     }
 
-    /** Execute an agent's action and update the environment's state. */
+    /**
+     * Execute an agent's action and update the environment's state. This is a
+     * single switch on the action's opcode that both applies the action and
+     * updates the scoring data.
+     */
     protected void updateState(Agent a, Action action) {
 
-        if (action instanceof GoForward || action instanceof ShutOff
-                || action instanceof SuckDirt || action instanceof TurnLeft
-                || action instanceof TurnRight)
-            super.updateState(a, action);
-        else
-            System.err.println("ERROR: Invalid action: " + action.toString());
-
-        // update scoring data
-        if (action instanceof GoForward)
+        int opcode = VacAction.opcodeOf(action);
+        switch (opcode) {
+        case VacAction.GO_FORWARD:
+            state = action.execute(a, state);
             numMoves++;
-        else if (action instanceof TurnRight || action instanceof TurnLeft)
+            break;
+        case VacAction.TURN_LEFT:
+        case VacAction.TURN_RIGHT:
+            state = action.execute(a, state);
             numTurns++;
-        else if (action instanceof SuckDirt)
+            break;
+        case VacAction.SUCK_DIRT:
+            state = action.execute(a, state);
             numSucks++;
+            break;
+        case VacAction.SHUT_OFF:
+            state = action.execute(a, state);
+            break;
+        default:
+            System.err.println("ERROR: Invalid action: " + action);
+        }
         if (((VacuumState) state).bumped())
             numBumps++;
 
         currentAction = action;
+        if (history != null)
+            history.add((VacuumState) state);
+        if (trace != null) {
+            try {
+                trace.record(this, opcode);
+                if (isComplete())
+                    trace.finish(this);
+            } catch (IOException e) {
+                output.println("ERROR - Unable to write trace: "
+                        + e.getMessage());
+                trace = null;
+            }
+        }
         //output.println("Action: " + action.toString());
         //output.println();
     }
@@ -131,10 +186,119 @@ public class VacuumWorld extends Environment {
         numSucks = 0;
         numTurns = 0;
         state = initState;
+        maxActions = getMaxActions((VacuumState) initState);
+        history = null;
+        watchdog = null;
+        if (decisionBudgetNanos > 0)
+            watchdog = new DecisionWatchdog(decisionBudgetNanos,
+                    TimeUnit.NANOSECONDS, fallbackAction);
+        if (keepHistory) {
+            // Actions must not modify states that are already in the history
+            if (!(state instanceof PersistentVacuumState))
+                state = PersistentVacuumState.of((VacuumState) state);
+            history = new ArrayList<VacuumState>();
+            history.add((VacuumState) state);
+        }
+        if (trace != null) {
+            try {
+                trace.begin(this, agents.isEmpty() ? "" : agents.get(0)
+                        .getId());
+            } catch (IOException e) {
+                output.println("ERROR - Unable to write trace: "
+                        + e.getMessage());
+                trace = null;
+            }
+        }
 
         //state.display();
     }
 
+    /**
+     * Return the action limit for a state. This is MAX_ACTIONS for the default
+     * room, and grows in proportion to the number of interior locations for
+     * larger rooms.
+     */
+    public static int getMaxActions(VacuumState state) {
+        long interior = (long) (state.getWidth() - 2) * (state.getHeight() - 2);
+        long defaultInterior = (VacuumState.DEFAULT_WIDTH - 2)
+                * (VacuumState.DEFAULT_HEIGHT - 2);
+        long scaled = MAX_ACTIONS * interior / defaultInterior;
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(MAX_ACTIONS, scaled));
+    }
+
+    /**
+     * Record a binary trace of the next run (see TraceWriter and Replay). This
+     * must be called before start(), after the agent has been added. The
+     * trace is complete once the simulation is; the caller is responsible for
+     * closing the writer.
+     */
+    public void setTrace(TraceWriter trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Limit the time the agent may take for each decision (its see() and
+     * selectAction() calls), using the default fallback action. See
+     * setDecisionBudget(long, TimeUnit, Action).
+     */
+    public void setDecisionBudget(long budget, TimeUnit unit) {
+        setDecisionBudget(budget, unit, DecisionWatchdog.DEFAULT_FALLBACK);
+    }
+
+    /**
+     * Limit the time the agent may take for each decision. Decisions then run
+     * on a separate thread, and if one takes longer than the budget, the given
+     * fallback action is performed instead (see DecisionWatchdog). The time of
+     * every decision is recorded and printed with the score. A budget of 0
+     * removes the limit. This takes effect at the next call to start().
+     */
+    public void setDecisionBudget(long budget, TimeUnit unit, Action fallback) {
+        this.decisionBudgetNanos = unit.toNanos(budget);
+        this.fallbackAction = fallback;
+    }
+
+    /**
+     * Return the watchdog that enforces the decision budget in the current
+     * run, or null if there is no budget.
+     */
+    public DecisionWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * Measure the time taken by each phase of every step (see StepMetrics).
+     * The same metrics object may be given to several worlds. Passing null
+     * turns the measurements off.
+     */
+    public void setMetrics(StepMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public StepMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set whether the world keeps every state of a run, so that it can be
+     * examined afterwards with getHistory(). This takes effect at the next call
+     * to start(), which converts the initial state to a PersistentVacuumState
+     * so that consecutive states share their unchanged parts.
+     */
+    public void setKeepHistory(boolean keepHistory) {
+        this.keepHistory = keepHistory;
+    }
+
+    /**
+     * Return every state of the current run, starting with the initial state
+     * and followed by the state after each action, or null if history is not
+     * being kept.
+     */
+    public List<VacuumState> getHistory() {
+        if (history == null)
+            return null;
+        return Collections.unmodifiableList(history);
+    }
+
     /**
      * @author Daniel Phang
      */
@@ -149,13 +313,100 @@ public class VacuumWorld extends Environment {
      */
     public void step() {
         if (!isComplete()) {
-            Agent a = agents.get(0);
-            currentPercept = (VacPercept) getPercept(a);
-            a.see(currentPercept);
-            currentAction = a.selectAction();
+            tick(agents.get(0));
+        }
+    }
+
+    /**
+     * Run the simulation until it is complete. This has the same effect as
+     * calling step() until isComplete() returns true, but looks up the agent
+     * only once.
+     */
+    public void runToCompletion() {
+        Agent a = agents.get(0);
+        while (!isComplete()) {
+            tick(a);
+        }
+    }
+
+    /** Perform one sense-act cycle for an agent. */
+    protected void tick(Agent a) {
+        if (metrics == null) {
+            perceive(a);
+            currentAction = selectAction(a);
             updateState(a, currentAction);
-            //state.display();
+        } else {
+            long start = System.nanoTime();
+            perceive(a);
+            long perceived = System.nanoTime();
+            int overrunsBefore = getNumOverruns();
+            currentAction = selectAction(a);
+            long decided = System.nanoTime();
+            updateState(a, currentAction);
+            metrics.recordStep(perceived - start, decided - perceived,
+                    System.nanoTime() - decided,
+                    ((VacuumState) state).bumped() ? 1 : 0, getNumOverruns()
+                            - overrunsBefore);
         }
+        if ((watchdog != null || metrics != null) && isComplete())
+            finishRun();
+        //state.display();
+    }
+
+    /** Create the current percept for an agent. */
+    private void perceive(Agent a) {
+        if (a instanceof BitPerceptAgent) {
+            // Fast path: no percept object is needed
+            currentPercept = null;
+            currentPerceptBits = VacPercept.encode((VacuumState) state);
+        } else {
+            currentPercept = (VacPercept) getPercept(a);
+            currentPerceptBits = currentPercept.getBits();
+        }
+    }
+
+    /** Let the agent decide on an action for the current percept. */
+    private Action selectAction(Agent a) {
+        if (watchdog != null)
+            return watchdog.decide(a, currentPerceptBits, currentPercept);
+        else
+            return decide(a, currentPerceptBits, currentPercept);
+    }
+
+    /**
+     * Called once the simulation is complete, to record the end of the run in
+     * the decision budget's watchdog and the metrics.
+     */
+    protected void finishRun() {
+        if (watchdog != null)
+            watchdog.finishRun();
+        if (metrics != null)
+            metrics.recordRun(timedOut());
+    }
+
+    /**
+     * Return the number of steps in which the decision budget's fallback
+     * action was used so far in this run.
+     */
+    protected int getNumOverruns() {
+        return watchdog != null ? watchdog.getNumOverruns() : 0;
+    }
+
+    /**
+     * Let an agent see a percept and select an action. Agents that implement
+     * BitPerceptAgent are given the bitmask; other agents are given the
+     * percept object, which is created from the bitmask if it is null.
+     */
+    protected static Action decide(Agent a, int perceptBits,
+            VacPercept percept) {
+        if (a instanceof BitPerceptAgent) {
+            ((BitPerceptAgent) a).see(perceptBits);
+        } else {
+            if (percept == null)
+                percept = new VacPercept(perceptBits);
+            a.see(percept);
+        }
+        return a.selectAction();
     }
 
     /**
@@ -183,7 +434,7 @@ public class VacuumWorld extends Environment {
      * Runs the program. The usage is:
      * 
      * <pre>
-     * java vacworld.VacuumWorld [-batch] [-rand integer] agentpack
+     * java vacworld.VacuumWorld [-batch] [-rand integer] [-size width height] [-density wall dirt] [-trace file] [-budget ms] [-metrics] agentpack
      * </pre>
      * 
      * The package containing the agent code (the VacAgent class) must be
@@ -191,19 +442,38 @@ public class VacuumWorld extends Environment {
      * mode, requiring the user to press a key after each action. To run in
      * batch mode, use the -batch switch. To test the agent in different
      * configurations, use the -rand <i>seed</i> argument, where <i>seed</i> is
-     * an integer to be used by the pseudo-random number generator.
+     * an integer to be used by the pseudo-random number generator. Random
+     * states are 7x7 by default; use -size to change the room dimensions
+     * (including the surrounding walls) and -density to change the fraction of
+     * interior locations that are walls and dirt. In batch mode, -trace
+     * <i>file</i> records a binary trace of the run that can be replayed with
+     * vacworld.Replay. With -budget <i>ms</i>, each decision of the agent may
+     * take at most <i>ms</i> milliseconds; slower decisions are replaced with
+     * a fallback action (see DecisionWatchdog). With -metrics, the time taken
+     * by each phase of a step is measured, published as a JMX MBean (see
+     * StepMetrics) and printed after the score.
      */
     public static void main(String[] args) {
 
         final VacuumWorld world;
         VacuumState initState;
+        String agentName = null;
         boolean interactive = true;
         boolean randomState = false;
         int randSeed = 0;
+        String traceFile = null;
+        long budgetMillis = 0;
+        boolean useMetrics = false;
+        int width = VacuumState.DEFAULT_WIDTH;
+        int height = VacuumState.DEFAULT_HEIGHT;
+        double wallDensity = VacuumState.WALL_CHANCE;
+        double dirtDensity = VacuumState.DIRT_CHANCE - VacuumState.WALL_CHANCE;
 
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("-batch"))
                 interactive = false;
+            else if (args[i].equals("-metrics"))
+                useMetrics = true;
             else if (args[i].equals("-rand")) {
                 i++;
                 if (i >= args.length) {
@@ -219,13 +489,51 @@ public class VacuumWorld extends Environment {
                             .println("ERROR: Seed passed with '-rand' must be an integer.");
                     System.exit(1);
                 }
+            } else if (args[i].equals("-trace")) {
+                i++;
+                if (i >= args.length) {
+                    System.err
+                            .println("ERROR: Must specify a file when using '-trace'");
+                    System.exit(1);
+                }
+                traceFile = args[i];
+            } else if (args[i].equals("-budget")) {
+                i++;
+                try {
+                    budgetMillis = Long.parseLong(args[i]);
+                } catch (RuntimeException ex) {
+                    System.err
+                            .println("ERROR: Must specify a number of milliseconds when using '-budget'");
+                    System.exit(1);
+                }
+            } else if (args[i].equals("-size")
+                    || args[i].equals("-density")) {
+                if (i + 2 >= args.length) {
+                    System.err.println("ERROR: Must specify two numbers when using '"
+                            + args[i] + "'");
+                    System.exit(1);
+                }
+                try {
+                    if (args[i].equals("-size")) {
+                        width = Integer.parseInt(args[i + 1]);
+                        height = Integer.parseInt(args[i + 2]);
+                    } else {
+                        wallDensity = Double.parseDouble(args[i + 1]);
+                        dirtDensity = Double.parseDouble(args[i + 2]);
+                    }
+                } catch (NumberFormatException ex) {
+                    System.err.println("ERROR: Invalid numbers passed with '"
+                            + args[i] + "'.");
+                    System.exit(1);
+                }
+                i += 2;
             } else if (agentName == null) {
                 agentName = args[i] + ".VacAgent";
                 i++;
             } else {
                 System.err.println("ERROR: Invalid command line arguments.");
                 System.err
-                        .println("Usage: java vacworld.VacuumWorld [-batch] [-rand integer] agentpack");
+                        .println("Usage: java vacworld.VacuumWorld [-batch] [-rand integer] [-size width height] [-density wall dirt] [-trace file] [-budget ms] [-metrics] agentpack");
                 System.exit(1);
             }
         }
@@ -233,6 +541,14 @@ public class VacuumWorld extends Environment {
         // See if we can load the agent into the world at first.
         world = new VacuumWorld();
         loadAgent(world, agentName);
+        if (budgetMillis > 0)
+            world.setDecisionBudget(budgetMillis, TimeUnit.MILLISECONDS);
+        StepMetrics metrics = null;
+        if (useMetrics) {
+            metrics = new StepMetrics();
+            metrics.register(agentName);
+            world.setMetrics(metrics);
+        }
         
         System.out.println("The Vacuum Cleaner World Agent Testbed");
         System.out.println("--------------------------------------");
@@ -241,13 +557,33 @@ public class VacuumWorld extends Environment {
         
         // Set initial state
         if (randomState) {
-            initState = VacuumState.getRandomState(randSeed);
+            initState = VacuumState.getRandomState(randSeed, width, height,
+                    wallDensity, dirtDensity);
             System.out.println("State generated with seed " + randSeed);
             System.out.println();
         } else
             initState = VacuumState.getInitState();
 
-        world.start(initState);
+        TraceWriter writer = null;
+        if (traceFile != null && !interactive) {
+            try {
+                writer = new TraceWriter(new FileOutputStream(traceFile));
+            } catch (IOException e) {
+                System.err.println("ERROR: Unable to create trace file "
+                        + traceFile);
+                System.exit(1);
+            }
+            if (randomState)
+                writer.setSeed(randSeed);
+            world.setTrace(writer);
+        }
+
+        // The GUI runs the simulation on its own thread and paints its states
+        // from the event dispatch thread, so they must never change in place
+        if (interactive)
+            world.start(PersistentVacuumState.of(initState));
+        else
+            world.start(initState);
         
         // Make the graphical user interface if we are using interactive mode
         if (interactive) {
@@ -261,10 +597,20 @@ public class VacuumWorld extends Environment {
             final int seed_f = randSeed;
             final String name_f = agentName;
             final boolean randomState_f = randomState;
+            final int width_f = width;
+            final int height_f = height;
+            final double wallDensity_f = wallDensity;
+            final double dirtDensity_f = dirtDensity;
+            final long budgetMillis_f = budgetMillis;
+            final StepMetrics metrics_f = metrics;
             SwingUtilities.invokeLater(new Runnable() {
                 public void run() {
                     VacWorldFrame frame = new VacWorldFrame();
                     frame.setAgentName(name_f);
+                    frame.setRoom(width_f, height_f, wallDensity_f,
+                            dirtDensity_f);
+                    frame.setDecisionBudget(budgetMillis_f);
+                    frame.setMetrics(metrics_f);
                     if (randomState_f) {
                         frame.setSeed(seed_f);
                     }
@@ -274,9 +620,7 @@ public class VacuumWorld extends Environment {
                 }
             });
         } else {
-            while (!world.isComplete()) {
-                world.step();
-            }
+            world.runToCompletion();
 
             if (world.timedOut()) {
                 System.out.println("*** Timeout. Test halted! ***");
@@ -284,6 +628,15 @@ public class VacuumWorld extends Environment {
             }
 
             world.printScore(System.out);
+
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    System.err.println("ERROR: Unable to write trace file "
+                            + traceFile);
+                }
+            }
         }
 
     }
@@ -294,16 +647,30 @@ public class VacuumWorld extends Environment {
      * @param agentName
      */
     public static void loadAgent(VacuumWorld world, String agentName) {
+        Agent agent = createAgent(agentName);
+        if (agent == null) {
+            System.out.println("ERROR: Unable to load class " + agentName);
+            System.exit(0);
+        }
+        world.addAgent(agent);
+    }
+
+    /**
+     * Create a new instance of the given agent class. Unlike loadAgent(), this
+     * never exits the VM, so it is safe to use when several worlds are run in
+     * the same process.
+     * 
+     * @param agentName
+     *            the fully qualified name of the agent class.
+     * @return the new agent, or null if the class could not be loaded.
+     */
+    public static Agent createAgent(String agentName) {
         ClassLoader myClassLoader = ClassLoader.getSystemClassLoader();
-        Class<?> myClass;
         try {
-            myClass = myClassLoader.loadClass(agentName);
-            Object o = myClass.newInstance();
-            Agent agent = (Agent) o;
-            world.addAgent(agent);
+            Class<?> myClass = myClassLoader.loadClass(agentName);
+            return (Agent) myClass.newInstance();
         } catch (Exception e) {
-            System.out.println("ERROR: Unable to load class " + agentName);
-            System.exit(0);
+            return null;
         }
     }
 
@@ -355,13 +722,27 @@ public class VacuumWorld extends Environment {
      * Returns the performance measure of the agent in the current environment.
      */
     protected int getPerformanceMeasure() {
+        return getPerformanceMeasure(numMoves, numTurns, numSucks, numBumps,
+                timedOut());
+    }
+
+    /**
+     * Returns the performance measure for the given numbers of actions and
+     * bumps, and the dirt left in the room. Every score is computed with this
+     * formula.
+     * 
+     * @param timedOut
+     *            whether the actions ran out, which costs a loop penalty.
+     */
+    protected int getPerformanceMeasure(int moves, int turns, int sucks,
+            int bumps, boolean timedOut) {
 
         int score;
         // score = 1000 + getMovesScore() + getTurnsScore() + getSucksScore() +
         // getBumpsScore() + getDirtScore() + getHomeScore();
-        score = 1000 + getMovesScore() + getTurnsScore() + getSucksScore()
-                + getBumpsScore() + getDirtScore();
-        if (timedOut())
+        score = 1000 + getMovesScore(moves) + getTurnsScore(turns)
+                + getSucksScore(sucks) + getBumpsScore(bumps) + getDirtScore();
+        if (timedOut)
             score = score - 100;
         if (score < 0)
             score = 0;
@@ -369,19 +750,39 @@ public class VacuumWorld extends Environment {
     }
 
     protected int getMovesScore() {
-        return numMoves * -2;
+        return getMovesScore(numMoves);
     }
 
     protected int getTurnsScore() {
-        return numTurns * -1;
+        return getTurnsScore(numTurns);
     }
 
     protected int getSucksScore() {
-        return numSucks * -2;
+        return getSucksScore(numSucks);
     }
 
     protected int getBumpsScore() {
-        return numBumps * -10;
+        return getBumpsScore(numBumps);
+    }
+
+    /** Returns the score for the given number of moves. */
+    protected static int getMovesScore(int moves) {
+        return moves * -2;
+    }
+
+    /** Returns the score for the given number of turns. */
+    protected static int getTurnsScore(int turns) {
+        return turns * -1;
+    }
+
+    /** Returns the score for the given number of sucks. */
+    protected static int getSucksScore(int sucks) {
+        return sucks * -2;
+    }
+
+    /** Returns the score for the given number of bumps. */
+    protected static int getBumpsScore(int bumps) {
+        return bumps * -10;
     }
 
     protected int getDirtScore() {
@@ -398,7 +799,7 @@ public class VacuumWorld extends Environment {
         out.println("----------");
         out.println("  Base score: \t1000");
         // out.println("  Home penalty: " + getHomeScore());
-        if (getNumActions() >= MAX_ACTIONS)
+        if (getNumActions() >= maxActions)
             out.println("  Loop penalty: -100");
         out.println("  Dirt left: \t" + getDirtScore() + "\t("
                 + getNumDirtyLocs() + ")");
@@ -408,7 +809,14 @@ public class VacuumWorld extends Environment {
         out.println("  Sucks: \t" + getSucksScore() + "\t(" + numSucks + ")");
         out.println("  ----------------------------");
         out.println("  TOTAL SCORE: \t" + getPerformanceMeasure());
+        if (watchdog != null) {
+            out.println("  Decisions: \t"
+                    + watchdog.getLatencies().summary() + "\t("
+                    + watchdog.getNumOverruns() + " overruns)");
+        }
         out.println();
+        if (metrics != null)
+            metrics.printSummary(out);
     }
 
     /**
@@ -422,10 +830,15 @@ public class VacuumWorld extends Environment {
     }
 
     /**
+     * Return the current percept. If the agent receives its percepts as
+     * bitmasks, the VacPercept object is only created when this is called.
+     * 
      * @author Daniel Phang
      * @return the current percept
      */
     public VacPercept getCurrentPercept() {
+        if (currentPercept == null && currentPerceptBits >= 0)
+            currentPercept = new VacPercept(currentPerceptBits);
         return currentPercept;
     }
 
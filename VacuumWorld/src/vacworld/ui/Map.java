@@ -2,9 +2,12 @@ package vacworld.ui;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 
 import javax.swing.JPanel;
 
@@ -13,6 +16,13 @@ import vacworld.VacuumState;
 /**
  * This class renders the world map for the Vacuum World environment.
  * 
+ * The map can be zoomed, and is meant to be shown in a JScrollPane. Only the
+ * part of the map that is visible is ever drawn. Zoomed in, each square is
+ * drawn as a tile; further out each square is a block of one colour, and
+ * further out still each pixel shows the mixed colour of a block of squares,
+ * taken from a MapSummary. Either way the cost of drawing depends on the size
+ * of the view, not the size of the map.
+ * 
  * @author Daniel Phang
  * 
  */
@@ -28,10 +38,60 @@ public class Map extends JPanel {
     public static final Tile CLEAR = new Tile();
     public static final Robot ROBOT = new Robot();
 
+    /** The size of a tile when the map is not zoomed. */
     public static final int TILE_SIZE = 50;
 
+    /*
+     * The size of a tile at each zoom level. Zoom levels past these show one
+     * pixel per block of 2x2, 4x4, ... squares, up to MapSummary.MAX_LEVEL.
+     */
+    private static final int[] TILE_SIZES = { TILE_SIZE, 25, 12, 6, 3, 1 };
+
+    /* Tiles smaller than this are drawn in one colour, without grid lines. */
+    private static final int MIN_SPRITE_SIZE = 12;
+
+    /* The robot is never drawn smaller than this, so it can still be seen. */
+    private static final int MIN_ROBOT_SIZE = 12;
+
+    /*
+     * When more squares than this change at once, the visible map is drawn
+     * again instead of square by square.
+     */
+    private static final int MAX_TILE_UPDATES = 256;
+
+    private static final BasicStroke GRID_STROKE = new BasicStroke(1);
+
     private VacuumState state;
     private boolean showGridLines;
+    private boolean followRobot;
+
+    /* The counts the map is drawn from when zoomed out. */
+    private MapSummary summary;
+
+    /* The minimap showing where the view is, or null. */
+    private Minimap minimap;
+
+    /*
+     * The zoom level, and what it means: each pixel of tileSize x tileSize
+     * shows a block of the given MapSummary level (level 0 being a square).
+     */
+    private int zoom = 0;
+    private int tileSize = TILE_SIZE;
+    private int level = 0;
+
+    /*
+     * The visible part of the map as last drawn, without the robot. It is
+     * drawn again from scratch when it is invalid or the view has moved.
+     * Otherwise only the tiles that change are drawn again.
+     */
+    private BufferedImage image;
+    private int imageX;
+    private int imageY;
+    private boolean imageValid = false;
+
+    /* Where the robot was when the map was last updated. */
+    private int robotX;
+    private int robotY;
 
     /**
      * Default constructor. Note that this method does not initialize the map to
@@ -49,16 +109,150 @@ public class Map extends JPanel {
      */
     public void init(VacuumState state) {
         this.state = state;
+        summary = new MapSummary(state);
+        robotX = state.getAgentX();
+        robotY = state.getAgentY();
+        imageValid = false;
+        revalidate();
+        if (minimap != null) {
+            minimap.init();
+        }
+    }
+
+    /**
+     * Shows the state after a step of the same world. A step only changes the
+     * square the robot leaves and the square it is on (where it may also have
+     * sucked up dirt), so only those two squares are drawn again and
+     * repainted.
+     * 
+     * @param state
+     */
+    public void update(VacuumState state) {
+        update(state, new int[0]);
+    }
+
+    /**
+     * Shows the state after any number of steps of the same world. Besides the
+     * square the robot was last shown on and the square it is on now, only
+     * the given squares are drawn again and repainted.
+     * 
+     * @param state
+     * @param changed
+     *            the squares that may have changed, as x, y pairs, or null to
+     *            draw the whole map again.
+     */
+    public void update(VacuumState state, int[] changed) {
+        this.state = state;
+        if (changed == null) {
+            summary = new MapSummary(state);
+            imageValid = false;
+            if (minimap != null) {
+                minimap.init();
+            }
+        } else {
+            if (changed.length / 2 > MAX_TILE_UPDATES) {
+                imageValid = false;
+            }
+            summary.setState(state);
+            updateTile(robotX, robotY);
+            for (int k = 0; k < changed.length; k += 2) {
+                updateTile(changed[k], changed[k + 1]);
+            }
+        }
+        repaintRobot();
+        robotX = state.getAgentX();
+        robotY = state.getAgentY();
+        updateTile(robotX, robotY);
+        repaintRobot();
+        if (!imageValid) {
+            repaint();
+        }
+
+        if (followRobot
+                && !getVisibleRect().contains(getTileBounds(robotX, robotY))) {
+            centerOn(robotX, robotY);
+        }
+    }
+
+    /**
+     * Count a square again, and draw it into the image again and repaint it
+     * if it is visible.
+     */
+    private void updateTile(int i, int j) {
+        summary.update(state, i, j);
+        if (minimap != null) {
+            minimap.update(i, j);
+        }
+        if (!imageValid) {
+            return;
+        }
+        Rectangle bounds = getTileBounds(i, j);
+        if (bounds.intersects(imageX, imageY, image.getWidth(),
+                image.getHeight())) {
+            Graphics2D g2d = image.createGraphics();
+            g2d.translate(-imageX, -imageY);
+            if (tileSize >= MIN_SPRITE_SIZE) {
+                g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                        RenderingHints.VALUE_ANTIALIAS_ON);
+                drawTile(g2d, i, j);
+                if (showGridLines) {
+                    drawGridLines(g2d, i, i, j, j);
+                }
+            } else {
+                g2d.setColor(new Color(summary.getRGB(level, i >> level,
+                        j >> level)));
+                g2d.fill(bounds);
+            }
+            g2d.dispose();
+            repaint(bounds);
+        }
+    }
+
+    /**
+     * Repaint the part of the map the robot was last drawn over.
+     */
+    private void repaintRobot() {
+        repaint(getRobotBounds(robotX, robotY));
     }
 
     @Override
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
-        g2d.clearRect(0, 0, getWidth(), getHeight());
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                RenderingHints.VALUE_ANTIALIAS_ON);
-        drawMap(g);
+        if (state == null) {
+            return;
+        }
+
+        // The image covers the part of the map that is visible
+        Rectangle view = getVisibleRect().intersection(
+                new Rectangle(getPreferredSize()));
+        if (view.isEmpty()) {
+            return;
+        }
+        if (image == null || image.getWidth() != view.width
+                || image.getHeight() != view.height) {
+            image = new BufferedImage(view.width, view.height,
+                    BufferedImage.TYPE_INT_RGB);
+            imageValid = false;
+        }
+        if (imageX != view.x || imageY != view.y) {
+            imageX = view.x;
+            imageY = view.y;
+            imageValid = false;
+        }
+        if (!imageValid) {
+            Graphics2D g2d = image.createGraphics();
+            g2d.translate(-imageX, -imageY);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            drawMap(g2d);
+            g2d.dispose();
+            imageValid = true;
+            if (minimap != null) {
+                minimap.repaint(); // The view may have moved
+            }
+        }
+
+        g.drawImage(image, imageX, imageY, null);
         drawRobot(g);
     }
 
@@ -68,77 +262,280 @@ public class Map extends JPanel {
      * @param g
      */
     private void drawRobot(Graphics g) {
-        if (state != null) {
-            int x = state.getAgentX() * TILE_SIZE;
-            int y = state.getAgentY() * TILE_SIZE;
+        Rectangle bounds = getRobotBounds(state.getAgentX(), state.getAgentY());
+        g.drawImage(ROBOT.getImage(state.getAgentDir(), bounds.width),
+                bounds.x, bounds.y, null);
+    }
+
+    /**
+     * Draw the part of our map that is in the image to the specified Graphics
+     * object.
+     * 
+     * @param g2d
+     */
+    private void drawMap(Graphics2D g2d) {
+        if (tileSize < MIN_SPRITE_SIZE) {
+            drawBlocks();
+            return;
+        }
+
+        int fromColumn = imageX / tileSize;
+        int fromRow = imageY / tileSize;
+        int toColumn = Math.min(state.getWidth(),
+                (imageX + image.getWidth() + tileSize - 1) / tileSize) - 1;
+        int toRow = Math.min(state.getHeight(),
+                (imageY + image.getHeight() + tileSize - 1) / tileSize) - 1;
+
+        for (int i = fromColumn; i <= toColumn; i++) {
+            for (int j = fromRow; j <= toRow; j++) {
+                drawTile(g2d, i, j);
+            }
+        }
 
-            ROBOT.draw(g, x, y, TILE_SIZE, TILE_SIZE, state.getAgentDir());
+        if (showGridLines) {
+            drawGridLines(g2d, fromColumn, toColumn, fromRow, toRow);
         }
     }
 
     /**
-     * Draw our map to the specified Graphics object.
-     * 
-     * @param g
+     * Fill the image one pixel at a time, with the colour of the square or
+     * block each pixel shows.
      */
-    private void drawMap(Graphics g) {
-        if (state != null) {
-            int width = state.getWidth();
-            int height = state.getHeight();
-
-            for (int i = 0; i < width; i++) {
-                for (int j = 0; j < height; j++) {
-                    int x = i * TILE_SIZE;
-                    int y = j * TILE_SIZE;
-                    Tile tile;
-                    if (state.hasObstacle(i, j)) {
-                        tile = OBSTACLE;
-                    } else if (state.hasDirt(i, j)) {
-                        tile = DIRT;
-                    } else {
-                        tile = CLEAR;
-                    }
-                    tile.draw(g, x, y, TILE_SIZE, TILE_SIZE);
+    private void drawBlocks() {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] rgb = new int[width];
+        for (int y = 0; y < height; y++) {
+            int bj = (imageY + y) / tileSize;
+            int last = -1;
+            int color = 0;
+            for (int x = 0; x < width; x++) {
+                int bi = (imageX + x) / tileSize;
+                if (bi != last) {
+                    color = summary.getRGB(level, bi, bj);
+                    last = bi;
                 }
+                rgb[x] = color;
             }
+            image.setRGB(0, y, width, 1, rgb, 0, width);
+        }
+    }
 
-            if (showGridLines) {
-                // Draw grid lines
-                Graphics2D g2d = (Graphics2D) g;
-                g2d.setColor(Color.GREEN);
-                g2d.setStroke(new BasicStroke(1));
-
-                // Draw vertical lines
-                for (int i = 0; i < width + 1; i++) {
-                    int x = i * TILE_SIZE;
-                    int y = height * TILE_SIZE;
-
-                    if (i == width) { // Last grid line should be on the inside
-                        x--;
-                    }
-                    g2d.drawLine(x, 0, x, y);
-                }
+    /**
+     * Draw the tile of one square of the map.
+     */
+    private void drawTile(Graphics2D g2d, int i, int j) {
+        Tile tile;
+        if (state.hasObstacle(i, j)) {
+            tile = OBSTACLE;
+        } else if (state.hasDirt(i, j)) {
+            tile = DIRT;
+        } else {
+            tile = CLEAR;
+        }
+        g2d.drawImage(tile.getImage(tileSize), i * tileSize, j * tileSize,
+                null);
+    }
 
-                // Draw horizontal lines
-                for (int i = 0; i < height + 1; i++) {
-                    int x = width * TILE_SIZE;
-                    int y = i * TILE_SIZE;
+    /**
+     * Draw the grid lines around the given columns and rows of squares.
+     */
+    private void drawGridLines(Graphics2D g2d, int fromColumn, int toColumn,
+            int fromRow, int toRow) {
+        int width = state.getWidth();
+        int height = state.getHeight();
+        g2d.setColor(Color.GREEN);
+        g2d.setStroke(GRID_STROKE);
 
-                    if (i == height) { // Last grid line should be on the inside
-                        y--;
-                    }
-                    g2d.drawLine(0, y, x, y);
-                }
+        // Draw vertical lines
+        for (int i = fromColumn; i <= toColumn + 1; i++) {
+            int x = i * tileSize;
+            if (i == width) { // Last grid line should be on the inside
+                x--;
+            }
+            g2d.drawLine(x, fromRow * tileSize, x, (toRow + 1) * tileSize);
+        }
+
+        // Draw horizontal lines
+        for (int j = fromRow; j <= toRow + 1; j++) {
+            int y = j * tileSize;
+            if (j == height) { // Last grid line should be on the inside
+                y--;
             }
+            g2d.drawLine(fromColumn * tileSize, y, (toColumn + 1) * tileSize,
+                    y);
+        }
+    }
+
+    /**
+     * Return the pixels that show a square at the current zoom level. Zoomed
+     * far out, these are the pixels of the block the square is in.
+     * 
+     * @param i
+     * @param j
+     * @return
+     */
+    public Rectangle getTileBounds(int i, int j) {
+        return new Rectangle((i >> level) * tileSize, (j >> level) * tileSize,
+                tileSize, tileSize);
+    }
+
+    /**
+     * Return where the robot is drawn when it is on the given square.
+     */
+    private Rectangle getRobotBounds(int i, int j) {
+        Rectangle bounds = getTileBounds(i, j);
+        int size = Math.max(tileSize, MIN_ROBOT_SIZE);
+        return new Rectangle(bounds.x - (size - tileSize) / 2, bounds.y
+                - (size - tileSize) / 2, size, size);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (state == null) {
+            return super.getPreferredSize();
+        }
+        return new Dimension(summary.getColumns(level) * tileSize,
+                summary.getRows(level) * tileSize);
+    }
+
+    /**
+     * Zoom in one level, keeping the middle of the view where it is.
+     */
+    public void zoomIn() {
+        setZoom(zoom - 1);
+    }
+
+    /**
+     * Zoom out one level, keeping the middle of the view where it is.
+     */
+    public void zoomOut() {
+        setZoom(zoom + 1);
+    }
+
+    /**
+     * Set the zoom level, keeping the middle of the view where it is. Level 0
+     * shows tiles of TILE_SIZE pixels, and each level after it shows about
+     * twice as many squares across.
+     * 
+     * @param zoom
+     */
+    public void setZoom(int zoom) {
+        zoom = Math.max(0, Math.min(getMaxZoom(), zoom));
+        if (zoom == this.zoom) {
+            return;
+        }
+        Rectangle cells = getVisibleCells();
+
+        this.zoom = zoom;
+        if (zoom < TILE_SIZES.length) {
+            tileSize = TILE_SIZES[zoom];
+            level = 0;
+        } else {
+            tileSize = 1;
+            level = zoom - TILE_SIZES.length + 1;
+        }
+        imageValid = false;
+        if (state != null) {
+            setSize(getPreferredSize());
+            revalidate();
+            centerOn((int) cells.getCenterX(), (int) cells.getCenterY());
         }
+        repaint();
     }
 
     /**
-     * Set whether grid lines should be overlayed on the map.
+     * @return the zoom level.
+     */
+    public int getZoom() {
+        return zoom;
+    }
+
+    /**
+     * @return the highest zoom level, which shows the most squares.
+     */
+    public int getMaxZoom() {
+        return TILE_SIZES.length + MapSummary.MAX_LEVEL - 1;
+    }
+
+    /**
+     * Scroll the view so that the given square is in the middle of it, as far
+     * as the map allows.
+     * 
+     * @param i
+     * @param j
+     */
+    public void centerOn(int i, int j) {
+        Rectangle view = getVisibleRect();
+        Rectangle tile = getTileBounds(i, j);
+        view.x = tile.x + tile.width / 2 - view.width / 2;
+        view.y = tile.y + tile.height / 2 - view.height / 2;
+        scrollRectToVisible(view);
+    }
+
+    /**
+     * @return the squares that are visible, at least in part.
+     */
+    public Rectangle getVisibleCells() {
+        Rectangle view = getVisibleRect();
+        int fromColumn = (view.x / tileSize) << level;
+        int fromRow = (view.y / tileSize) << level;
+        int toColumn = ((view.x + view.width + tileSize - 1) / tileSize) << level;
+        int toRow = ((view.y + view.height + tileSize - 1) / tileSize) << level;
+        if (state != null) {
+            toColumn = Math.min(toColumn, state.getWidth());
+            toRow = Math.min(toRow, state.getHeight());
+        }
+        return new Rectangle(fromColumn, fromRow, toColumn - fromColumn, toRow
+                - fromRow);
+    }
+
+    /**
+     * @return the state shown by the map.
+     */
+    public VacuumState getState() {
+        return state;
+    }
+
+    /**
+     * @return the counts of obstacles and dirt the map is drawn from when
+     *         zoomed out.
+     */
+    public MapSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Set the minimap that shows the whole map and where the view is. The map
+     * keeps it up to date as the world changes.
+     * 
+     * @param minimap
+     */
+    public void setMinimap(Minimap minimap) {
+        this.minimap = minimap;
+    }
+
+    /**
+     * Set whether grid lines should be overlayed on the map. They are only
+     * drawn when the tiles are big enough.
      * 
      * @param showGridLines
      */
     public void setShowGridLines(boolean showGridLines) {
         this.showGridLines = showGridLines;
+        imageValid = false;
+    }
+
+    /**
+     * Set whether the view should scroll to follow the robot when it leaves
+     * the view.
+     * 
+     * @param followRobot
+     */
+    public void setFollowRobot(boolean followRobot) {
+        this.followRobot = followRobot;
+        if (followRobot && state != null) {
+            centerOn(robotX, robotY);
+        }
     }
 }
@@ -0,0 +1,171 @@
+package vacworld.ui;
+
+import java.awt.Color;
+
+import vacworld.VacuumState;
+
+/**
+ * Counts the obstacles and dirt in square blocks of a map, so that a map
+ * zoomed far out can be drawn with one colour per block without looking at
+ * every square it covers.
+ * 
+ * Level 0 is the map itself, and each block of level l covers 2^l x 2^l
+ * squares. The counts of a level are made from the four blocks below them, so
+ * when a square changes only one block per level is counted again.
+ * 
+ * @author Daniel Phang
+ * 
+ */
+public class MapSummary {
+
+    /** The highest level counted: blocks of 64x64 squares. */
+    public static final int MAX_LEVEL = 6;
+
+    private VacuumState state;
+
+    // The number of blocks across and down each level
+    private final int[] columns = new int[MAX_LEVEL + 1];
+    private final int[] rows = new int[MAX_LEVEL + 1];
+
+    // The obstacles and dirt in each block, by [level][row * columns + column].
+    // Level 0 is read from the state instead.
+    private final short[][] obstacles = new short[MAX_LEVEL + 1][];
+    private final short[][] dirt = new short[MAX_LEVEL + 1][];
+
+    /**
+     * Count the blocks of every level of the given state.
+     * 
+     * @param state
+     */
+    public MapSummary(VacuumState state) {
+        this.state = state;
+        columns[0] = state.getWidth();
+        rows[0] = state.getHeight();
+        for (int l = 1; l <= MAX_LEVEL; l++) {
+            columns[l] = (columns[l - 1] + 1) / 2;
+            rows[l] = (rows[l - 1] + 1) / 2;
+            obstacles[l] = new short[columns[l] * rows[l]];
+            dirt[l] = new short[columns[l] * rows[l]];
+            for (int bj = 0; bj < rows[l]; bj++) {
+                for (int bi = 0; bi < columns[l]; bi++) {
+                    count(l, bi, bj);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count the blocks that cover a square again, after a step of the same
+     * world.
+     * 
+     * @param state
+     *            the state after the step.
+     * @param i
+     * @param j
+     */
+    public void update(VacuumState state, int i, int j) {
+        this.state = state;
+        for (int l = 1; l <= MAX_LEVEL; l++) {
+            i >>= 1;
+            j >>= 1;
+            count(l, i, j);
+        }
+    }
+
+    /**
+     * Set the state the counts are of, when no square has changed since the
+     * last one.
+     * 
+     * @param state
+     */
+    public void setState(VacuumState state) {
+        this.state = state;
+    }
+
+    /**
+     * Count the obstacles and dirt of a block from the blocks below it.
+     */
+    private void count(int l, int bi, int bj) {
+        int o = 0;
+        int d = 0;
+        for (int j = 2 * bj; j <= 2 * bj + 1 && j < rows[l - 1]; j++) {
+            for (int i = 2 * bi; i <= 2 * bi + 1 && i < columns[l - 1]; i++) {
+                if (l == 1) {
+                    if (state.hasObstacle(i, j)) {
+                        o++;
+                    } else if (state.hasDirt(i, j)) {
+                        d++;
+                    }
+                } else {
+                    o += obstacles[l - 1][j * columns[l - 1] + i];
+                    d += dirt[l - 1][j * columns[l - 1] + i];
+                }
+            }
+        }
+        obstacles[l][bj * columns[l] + bi] = (short) o;
+        dirt[l][bj * columns[l] + bi] = (short) d;
+    }
+
+    /**
+     * @return the number of blocks across a level.
+     */
+    public int getColumns(int level) {
+        return columns[level];
+    }
+
+    /**
+     * @return the number of blocks down a level.
+     */
+    public int getRows(int level) {
+        return rows[level];
+    }
+
+    /**
+     * Return the colour of a block: the colours of obstacles, dirt and clear
+     * squares mixed in the proportions the block has of them.
+     * 
+     * @param level
+     * @param bi
+     *            the column of the block.
+     * @param bj
+     *            the row of the block.
+     * @return an RGB value.
+     */
+    public int getRGB(int level, int bi, int bj) {
+        if (level == 0) {
+            if (state.hasObstacle(bi, bj)) {
+                return ObstacleTile.OBSTACLE_COLOR.getRGB();
+            } else if (state.hasDirt(bi, bj)) {
+                return DirtTile.DIRT_COLOR.getRGB();
+            }
+            return Tile.TILE_COLOR.getRGB();
+        }
+
+        // Blocks on the right and bottom edges may be cut short by the map
+        int size = 1 << level;
+        int width = Math.min(size, columns[0] - bi * size);
+        int height = Math.min(size, rows[0] - bj * size);
+        int n = width * height;
+        int o = obstacles[level][bj * columns[level] + bi];
+        int d = dirt[level][bj * columns[level] + bi];
+        int c = n - o - d;
+        return 0xff000000
+                | mix(ObstacleTile.OBSTACLE_COLOR, DirtTile.DIRT_COLOR,
+                        Tile.TILE_COLOR, o, d, c, n, 16) << 16
+                | mix(ObstacleTile.OBSTACLE_COLOR, DirtTile.DIRT_COLOR,
+                        Tile.TILE_COLOR, o, d, c, n, 8) << 8
+                | mix(ObstacleTile.OBSTACLE_COLOR, DirtTile.DIRT_COLOR,
+                        Tile.TILE_COLOR, o, d, c, n, 0);
+    }
+
+    /**
+     * Mix one channel of three colours in the given amounts.
+     */
+    private static int mix(Color a, Color b, Color c, int na, int nb, int nc,
+            int n, int shift) {
+        return ((a.getRGB() >> shift & 0xff) * na
+                + (b.getRGB() >> shift & 0xff) * nb + (c.getRGB() >> shift & 0xff)
+                * nc)
+                / n;
+    }
+}
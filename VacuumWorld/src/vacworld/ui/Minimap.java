@@ -0,0 +1,161 @@
+package vacworld.ui;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JPanel;
+
+import vacworld.VacuumState;
+
+/**
+ * Shows the whole of a Map at a glance, with a box around the part the map's
+ * view shows and a dot for the robot. Clicking or dragging moves the view.
+ * 
+ * The minimap is drawn from the map's MapSummary, one pixel per block of the
+ * smallest level that fits, and is then scaled to the size of the panel. When
+ * a square changes only the pixel of its block is drawn again.
+ * 
+ * @author Daniel Phang
+ * 
+ */
+public class Minimap extends JPanel {
+
+    private static final long serialVersionUID = 4530385957226471170L;
+
+    public static final Color VIEW_COLOR = Color.BLUE;
+    public static final Color ROBOT_COLOR = Robot.BODY_COLOR;
+
+    private final Map map;
+
+    // The map, one pixel per block of the given level
+    private BufferedImage image;
+    private int level;
+    private boolean imageValid = false;
+
+    /**
+     * Create a minimap of the given map.
+     * 
+     * @param map
+     */
+    public Minimap(Map map) {
+        super();
+        this.map = map;
+        map.setMinimap(this);
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                moveView(e.getX(), e.getY());
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                moveView(e.getX(), e.getY());
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+    }
+
+    /**
+     * Draw the whole minimap again, for a new state of the map.
+     */
+    public void init() {
+        imageValid = false;
+        repaint();
+    }
+
+    /**
+     * Draw the block of a square that has changed again.
+     * 
+     * @param i
+     * @param j
+     */
+    public void update(int i, int j) {
+        if (imageValid) {
+            image.setRGB(i >> level, j >> level,
+                    map.getSummary().getRGB(level, i >> level, j >> level));
+        }
+        repaint();
+    }
+
+    @Override
+    public void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        VacuumState state = map.getState();
+        if (state == null) {
+            return;
+        }
+        if (!imageValid) {
+            drawImage();
+        }
+
+        // Scale the image to fit, keeping its shape
+        double scale = getScale();
+        g.drawImage(image, 0, 0, (int) (image.getWidth() * scale),
+                (int) (image.getHeight() * scale), null);
+
+        // Scale from squares to pixels
+        scale /= 1 << level;
+
+        Rectangle cells = map.getVisibleCells();
+        g.setColor(VIEW_COLOR);
+        g.drawRect((int) (cells.x * scale), (int) (cells.y * scale),
+                Math.max(1, (int) (cells.width * scale) - 1),
+                Math.max(1, (int) (cells.height * scale) - 1));
+
+        int x = (int) ((state.getAgentX() + 0.5) * scale);
+        int y = (int) ((state.getAgentY() + 0.5) * scale);
+        g.setColor(ROBOT_COLOR);
+        g.fillOval(x - 2, y - 2, 5, 5);
+    }
+
+    /**
+     * Draw the image from the summary, at the smallest level that fits in the
+     * panel.
+     */
+    private void drawImage() {
+        MapSummary summary = map.getSummary();
+        level = 0;
+        while (level < MapSummary.MAX_LEVEL
+                && (summary.getColumns(level) > getWidth() || summary
+                        .getRows(level) > getHeight())) {
+            level++;
+        }
+        int columns = summary.getColumns(level);
+        int rows = summary.getRows(level);
+        image = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_RGB);
+        for (int bj = 0; bj < rows; bj++) {
+            for (int bi = 0; bi < columns; bi++) {
+                image.setRGB(bi, bj, summary.getRGB(level, bi, bj));
+            }
+        }
+        imageValid = true;
+    }
+
+    /**
+     * Return how many pixels of the panel each pixel of the image takes.
+     */
+    private double getScale() {
+        return Math.min((double) getWidth() / image.getWidth(),
+                (double) getHeight() / image.getHeight());
+    }
+
+    /**
+     * Center the map's view on the square under the given point.
+     */
+    private void moveView(int x, int y) {
+        if (map.getState() == null || !imageValid) {
+            return;
+        }
+        double scale = getScale() / (1 << level);
+        VacuumState state = map.getState();
+        int i = Math.min(state.getWidth() - 1, (int) (x / scale));
+        int j = Math.min(state.getHeight() - 1, (int) (y / scale));
+        map.centerOn(i, j);
+    }
+}
@@ -14,12 +14,14 @@ import java.awt.Graphics2D;
 public class ObstacleTile extends Tile {
     public static final Color OBSTACLE_COLOR = Color.BLACK;
     public static final int OBSTACLE_THICKNESS = 5;
+    private static final BasicStroke OBSTACLE_STROKE = new BasicStroke(
+            OBSTACLE_THICKNESS);
 
     @Override
     public void draw(Graphics g, int x, int y, int width, int height) {
         super.draw(g, x, y, width, height);
         Graphics2D g2d = (Graphics2D) g;
-        g2d.setStroke(new BasicStroke(OBSTACLE_THICKNESS));
+        g2d.setStroke(OBSTACLE_STROKE);
         g2d.setColor(OBSTACLE_COLOR);
         g2d.drawLine(x + OBSTACLE_THICKNESS, y + OBSTACLE_THICKNESS, x + width
                 - OBSTACLE_THICKNESS, y + height - OBSTACLE_THICKNESS);
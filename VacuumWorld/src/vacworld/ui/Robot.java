@@ -4,7 +4,9 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 
 import vacworld.Direction;
 
@@ -19,11 +21,43 @@ public class Robot {
     public static final Color DIRECTION_COLOR = Color.WHITE;
     private static final double FILL_RATIO = 0.75; // How much space the robot
                                                    // takes of its square
+    private static final BasicStroke ARROW_STROKE = new BasicStroke(5);
+
+    // The robot facing each direction, drawn at the size last asked for
+    private final BufferedImage[] images = new BufferedImage[4];
 
     public Robot() {
 
     }
 
+    /**
+     * Return an image of the robot facing the given direction, drawn
+     * (antialiased) on a transparent square of the given size. The robot is
+     * drawn facing every direction at once, and the images are kept until
+     * another size is asked for, so painting the robot is a single
+     * drawImage().
+     * 
+     * @param direction
+     *            a direction number.
+     * @param size
+     *            the width and height of the square.
+     * @return
+     */
+    public BufferedImage getImage(int direction, int size) {
+        if (images[direction] == null || images[direction].getWidth() != size) {
+            for (int d = Direction.NORTH; d <= Direction.WEST; d++) {
+                images[d] = new BufferedImage(size, size,
+                        BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g2d = images[d].createGraphics();
+                g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                        RenderingHints.VALUE_ANTIALIAS_ON);
+                draw(g2d, 0, 0, size, size, d);
+                g2d.dispose();
+            }
+        }
+        return images[direction];
+    }
+
     public void draw(Graphics g, int x, int y, int width, int height,
             int direction) {
         int newWidth = (int) (width * FILL_RATIO);
@@ -46,7 +80,7 @@ public class Robot {
         // Draw rotated directional arrow
         g2d.rotate(directionToAngle(direction), centerX, centerY);
         g2d.setColor(DIRECTION_COLOR);
-        g2d.setStroke(new BasicStroke(5));
+        g2d.setStroke(ARROW_STROKE);
         g2d.drawLine(centerX - newWidth / 4, centerY, centerX, centerY
                 - newHeight / 4);
         g2d.drawLine(centerX + newWidth / 4, centerY, centerX, centerY
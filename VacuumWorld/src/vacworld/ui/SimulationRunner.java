@@ -0,0 +1,272 @@
+package vacworld.ui;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import vacworld.PersistentVacuumState;
+import vacworld.VacAction;
+import vacworld.VacuumState;
+import vacworld.VacuumWorld;
+
+/**
+ * Runs a VacuumWorld on its own thread, so that the GUI stays responsive
+ * however fast (or slow) the agent is, and publishes what the GUI needs to
+ * show as immutable snapshots.
+ * 
+ * After each step the simulation thread publishes a Snapshot of the world. The
+ * GUI takes the latest snapshot when it refreshes, so steps it had no time to
+ * show are skipped, but the squares they changed are kept with the next
+ * snapshot so none are missed. Snapshots are handed over through an
+ * AtomicReference, so neither thread ever waits for the other.
+ * 
+ * The states in the snapshots are shared with the simulation thread, so the
+ * world must be started with a PersistentVacuumState, which actions never
+ * change in place. Every step is also recorded in a Timeline, so the GUI can
+ * go back to any of them.
+ * 
+ * @author Daniel Phang
+ * 
+ */
+public class SimulationRunner implements Runnable {
+
+    private final VacuumWorld world;
+
+    // The delay between steps in nanoseconds, or 0 to run at full speed
+    private volatile long delayNanos;
+
+    private volatile boolean stopRequested;
+    private Thread thread;
+
+    // Notified when a stop is requested, to cut the delay between steps short
+    private final Object delayLock = new Object();
+
+    // The latest snapshot the GUI has not taken yet
+    private final AtomicReference<Snapshot> pending = new AtomicReference<Snapshot>();
+
+    // The number of steps run so far
+    private long steps = 0;
+
+    private final Timeline timeline;
+
+    /**
+     * Create a runner for a world that has been started with a
+     * PersistentVacuumState.
+     * 
+     * @param world
+     */
+    public SimulationRunner(VacuumWorld world) {
+        this.world = world;
+        this.timeline = new Timeline((PersistentVacuumState) world.getState());
+    }
+
+    /**
+     * @return the timeline the steps are recorded in.
+     */
+    public Timeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * Set the delay between steps while running.
+     * 
+     * @param delay
+     *            the delay, or 0 to run as fast as possible.
+     * @param unit
+     */
+    public void setDelay(long delay, TimeUnit unit) {
+        this.delayNanos = unit.toNanos(delay);
+    }
+
+    /**
+     * Start running the simulation on a new thread, until it is complete or
+     * requestStop() is called. This does nothing if it is already running.
+     */
+    public void start() {
+        if (isRunning()) {
+            return;
+        }
+        stopRequested = false;
+        thread = new Thread(this, "VacuumWorld simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Ask the simulation thread to stop after its current step. This returns
+     * at once; isRunning() tells when the thread has stopped.
+     * 
+     * The thread is not interrupted, since that would cut the agent's decision
+     * short and change the run; only the delay between steps is woken.
+     */
+    public void requestStop() {
+        synchronized (delayLock) {
+            stopRequested = true;
+            delayLock.notifyAll();
+        }
+    }
+
+    /**
+     * @return whether the simulation thread is still running.
+     */
+    public boolean isRunning() {
+        return thread != null && thread.isAlive();
+    }
+
+    /**
+     * Run a single step on the calling thread, and publish its snapshot. This
+     * must not be called while the simulation thread is running.
+     */
+    public void step() {
+        if (isRunning()) {
+            throw new IllegalStateException("The simulation is running");
+        }
+        stepAndPublish();
+    }
+
+    /**
+     * Take the latest snapshot, if there is one the GUI has not taken yet.
+     * 
+     * @return the snapshot, or null if nothing happened since the last one.
+     */
+    public Snapshot take() {
+        return pending.getAndSet(null);
+    }
+
+    @Override
+    public void run() {
+        while (!stopRequested && !world.isComplete()) {
+            stepAndPublish();
+
+            long delay = delayNanos;
+            if (delay > 0) {
+                try {
+                    delay(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait between steps, until the delay is over or a stop is requested.
+     */
+    private void delay(long nanos) throws InterruptedException {
+        long deadline = System.nanoTime() + nanos;
+        synchronized (delayLock) {
+            long remaining = nanos;
+            while (!stopRequested && remaining > 0) {
+                TimeUnit.NANOSECONDS.timedWait(delayLock, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Step the world and merge the result into the pending snapshot.
+     */
+    private void stepAndPublish() {
+        world.step();
+        steps++;
+        VacuumState state = world.getState();
+        timeline.record(VacAction.opcodeOf(world.getCurrentAction()),
+                (PersistentVacuumState) state);
+        Snapshot next = new Snapshot(state, steps, String.valueOf(world
+                .getCurrentPercept()), String.valueOf(world
+                .getCurrentAction()), new Square(state.getAgentX(),
+                state.getAgentY(), null));
+        while (true) {
+            Snapshot old = pending.get();
+            Snapshot merged = old == null ? next : next.after(old);
+            if (pending.compareAndSet(old, merged)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * What the GUI shows of the world after a step. Snapshots are immutable.
+     */
+    public static final class Snapshot {
+        private final VacuumState state;
+        private final long step;
+        private final String percept;
+        private final String action;
+
+        // The squares the agent was on since the last snapshot taken, newest
+        // first
+        private final Square changed;
+
+        Snapshot(VacuumState state, long step, String percept, String action,
+                Square changed) {
+            this.state = state;
+            this.step = step;
+            this.percept = percept;
+            this.action = action;
+            this.changed = changed;
+        }
+
+        /**
+         * Return this snapshot of a single step with the changed squares of an
+         * earlier one that was never taken added to it. This takes constant
+         * time, as the earlier squares are shared.
+         */
+        Snapshot after(Snapshot earlier) {
+            return new Snapshot(state, step, percept, action, new Square(
+                    changed.x, changed.y, earlier.changed));
+        }
+
+        public VacuumState getState() {
+            return state;
+        }
+
+        /**
+         * @return the number of steps run when the snapshot was taken.
+         */
+        public long getStep() {
+            return step;
+        }
+
+        public String getPercept() {
+            return percept;
+        }
+
+        public String getAction() {
+            return action;
+        }
+
+        /**
+         * @return the squares the agent was on since the last snapshot that
+         *         was taken, oldest first, as x, y pairs.
+         */
+        public int[] getChanged() {
+            int n = 0;
+            for (Square s = changed; s != null; s = s.next) {
+                n++;
+            }
+            int[] squares = new int[2 * n];
+            for (Square s = changed; s != null; s = s.next) {
+                n--;
+                squares[2 * n] = s.x;
+                squares[2 * n + 1] = s.y;
+            }
+            return squares;
+        }
+    }
+
+    /**
+     * A list of squares, newest first, that snapshots share.
+     */
+    private static final class Square {
+        private final int x;
+        private final int y;
+        private final Square next;
+
+        Square(int x, int y, Square next) {
+            this.x = x;
+            this.y = y;
+            this.next = next;
+        }
+    }
+}
@@ -2,6 +2,9 @@ package vacworld.ui;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 
 /**
  * Represents a generic tile. Other tiles inherit from this class.
@@ -12,8 +15,32 @@ import java.awt.Graphics;
 public class Tile {
     public static final Color TILE_COLOR = new Color(214, 217, 223);
 
+    // The tile drawn at the size last asked for by getImage()
+    private BufferedImage image;
+
     public void draw(Graphics g, int x, int y, int width, int height) {
         g.setColor(TILE_COLOR);
         g.fillRect(x, y, width, height);
     }
+
+    /**
+     * Return an image of this tile, drawn (antialiased) at the given size. The
+     * image is kept until another size is asked for, so painting the tile is a
+     * single drawImage().
+     * 
+     * @param size
+     *            the width and height of the tile.
+     * @return
+     */
+    public BufferedImage getImage(int size) {
+        if (image == null || image.getWidth() != size) {
+            image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = image.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            draw(g2d, 0, 0, size, size);
+            g2d.dispose();
+        }
+        return image;
+    }
 }
@@ -0,0 +1,171 @@
+package vacworld.ui;
+
+import java.util.Arrays;
+
+import vacworld.PersistentVacuumState;
+import vacworld.VacAction;
+
+/**
+ * Remembers every step of a simulation in memory, so that the GUI can show
+ * the state after any of them again without running the agent.
+ * 
+ * Each step is kept as the opcode of its action, one byte. Every so many
+ * steps the state itself is kept as a keyframe; since the states are
+ * persistent, a keyframe only costs the dirt tiles that changed since the one
+ * before it. The state after a step is found by executing the actions since
+ * the last keyframe before it again, so it never takes more than the distance
+ * between keyframes.
+ * 
+ * Keyframes start FIRST_KEYFRAME_INTERVAL steps apart, and at most
+ * MAX_KEYFRAMES are kept. When there would be more, every other keyframe is
+ * dropped and the interval is doubled, so the keyframes stay evenly spaced
+ * over the whole run. No step is ever more than 2 * getNumSteps() /
+ * MAX_KEYFRAMES steps (or FIRST_KEYFRAME_INTERVAL, early on) from the
+ * keyframe before it.
+ * 
+ * Steps are recorded by the simulation thread and looked up by the GUI, so
+ * the methods are synchronized; states are found outside the lock.
+ * 
+ * @author Daniel Phang
+ * 
+ */
+public class Timeline {
+
+    /** The number of steps between keyframes, until keyframes are dropped. */
+    public static final int FIRST_KEYFRAME_INTERVAL = 256;
+
+    /** The most keyframes kept. */
+    public static final int MAX_KEYFRAMES = 256;
+
+    // The opcode of each step's action, or -1 if it was not a vacuum world
+    // action
+    private byte[] opcodes = new byte[FIRST_KEYFRAME_INTERVAL];
+    private int numSteps = 0;
+
+    // The number of steps between keyframes, which doubles each time half of
+    // the keyframes are dropped
+    private int keyframeInterval = FIRST_KEYFRAME_INTERVAL;
+
+    // The step of each keyframe, in order, and the state after it
+    private final int[] keyframeSteps = new int[MAX_KEYFRAMES];
+    private final PersistentVacuumState[] keyframes = new PersistentVacuumState[MAX_KEYFRAMES];
+    private int numKeyframes = 0;
+
+    // The last state found by getState(), to go on from when the next step
+    // asked for is a little later
+    private int lastStep = -1;
+    private PersistentVacuumState lastState;
+
+    /**
+     * Create a timeline starting from the given state.
+     * 
+     * @param initState
+     *            the state before the first step. It must be persistent.
+     */
+    public Timeline(PersistentVacuumState initState) {
+        addKeyframe(0, initState);
+    }
+
+    /**
+     * Record a step.
+     * 
+     * @param opcode
+     *            the opcode of the action, or -1 if it was not a vacuum world
+     *            action.
+     * @param state
+     *            the state after the step.
+     */
+    public synchronized void record(int opcode, PersistentVacuumState state) {
+        if (numSteps == opcodes.length) {
+            opcodes = Arrays.copyOf(opcodes, 2 * numSteps);
+        }
+        opcodes[numSteps++] = (byte) opcode;
+        if (numSteps - keyframeSteps[numKeyframes - 1] >= keyframeInterval) {
+            addKeyframe(numSteps, state);
+        }
+    }
+
+    /**
+     * Keep a keyframe. If there is no room, every other keyframe is dropped
+     * first, keeping the first one (the initial state), and the interval is
+     * doubled. The keyframes are then every keyframeInterval steps, and so is
+     * the new one.
+     */
+    private void addKeyframe(int step, PersistentVacuumState state) {
+        if (numKeyframes == MAX_KEYFRAMES) {
+            int n = 0;
+            for (int k = 0; k < numKeyframes; k += 2) {
+                keyframeSteps[n] = keyframeSteps[k];
+                keyframes[n] = keyframes[k];
+                n++;
+            }
+            Arrays.fill(keyframes, n, numKeyframes, null);
+            numKeyframes = n;
+            keyframeInterval *= 2;
+        }
+        keyframeSteps[numKeyframes] = step;
+        keyframes[numKeyframes] = state;
+        numKeyframes++;
+    }
+
+    /**
+     * @return the number of steps recorded.
+     */
+    public synchronized int getNumSteps() {
+        return numSteps;
+    }
+
+    /**
+     * Return the opcode of the action of a step.
+     * 
+     * @param step
+     *            a step from 1 to getNumSteps().
+     * @return the opcode, or -1 if the action was not a vacuum world action.
+     */
+    public synchronized int getOpcode(int step) {
+        return opcodes[step - 1];
+    }
+
+    /**
+     * Return the state after a step, found from the nearest keyframe before
+     * it (or the last state returned, if that is nearer).
+     * 
+     * @param step
+     *            a step from 0 (the initial state) to getNumSteps().
+     * @return
+     */
+    public PersistentVacuumState getState(int step) {
+        PersistentVacuumState state;
+        int from;
+        byte[] actions;
+        synchronized (this) {
+            if (step < 0 || step > numSteps) {
+                throw new IndexOutOfBoundsException("No step " + step);
+            }
+            int k = Arrays.binarySearch(keyframeSteps, 0, numKeyframes, step);
+            if (k < 0) {
+                k = -k - 2; // The keyframe before the step
+            }
+            from = keyframeSteps[k];
+            state = keyframes[k];
+            if (lastStep <= step && lastStep > from) {
+                from = lastStep;
+                state = lastState;
+            }
+            actions = Arrays.copyOfRange(opcodes, from, step);
+        }
+
+        for (byte opcode : actions) {
+            VacAction action = VacAction.forOpcode(opcode);
+            if (action != null) {
+                state = (PersistentVacuumState) action.execute(null, state);
+            }
+        }
+
+        synchronized (this) {
+            lastStep = step;
+            lastState = state;
+        }
+        return state;
+    }
+}
@@ -2,12 +2,15 @@ package vacworld.ui;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -18,12 +21,21 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSlider;
 import javax.swing.JTextField;
 import javax.swing.Timer;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
+import vacworld.PersistentVacuumState;
+import vacworld.StepMetrics;
+import vacworld.VacAction;
+import vacworld.VacPercept;
 import vacworld.VacuumState;
 import vacworld.VacuumWorld;
+import vacworld.ui.SimulationRunner.Snapshot;
 
 /**
  * Represents the Vacuum World GUI.
@@ -37,11 +49,15 @@ public class VacWorldFrame extends JFrame {
     private static final double DEFAULT_INTERVAL = 2;
     private static final double MAX_INTERVAL = 10;
     private static final double MIN_INTERVAL = 0.01;
+    // How often the GUI shows the running simulation if the display's refresh
+    // rate is unknown, in milliseconds
+    private static final int DEFAULT_REFRESH_INTERVAL = 16;
     private static final String RUNNING = "RUNNING";
     private static final String STOPPED = "STOPPED";
 
     // Represents the VacuumWorld map.
     private Map map;
+    private Minimap minimap;
 
     private String agentName;
     private JPanel contentPane;
@@ -52,9 +68,27 @@ public class VacWorldFrame extends JFrame {
     private JButton btnStop;
     private JButton btnScore;
     private JButton btnReset;
+    private JButton btnZoomIn;
+    private JButton btnZoomOut;
     private VacuumWorld world;
 
-    // Timer for starting/stopping simulation
+    // Runs the world's simulation on its own thread
+    private SimulationRunner runner;
+
+    // Room settings used to generate random states
+    private int roomWidth = VacuumState.DEFAULT_WIDTH;
+    private int roomHeight = VacuumState.DEFAULT_HEIGHT;
+    private double wallDensity = VacuumState.WALL_CHANCE;
+    private double dirtDensity = VacuumState.DIRT_CHANCE
+            - VacuumState.WALL_CHANCE;
+
+    // Decision budget for the agent in milliseconds, or 0 for none
+    private long budgetMillis = 0;
+
+    // Step metrics shared by every world the frame creates, or null
+    private StepMetrics metrics;
+
+    // Timer for showing the latest snapshot of the running simulation
     private Timer timer;
 
     private JLabel lblPerceptString;
@@ -62,6 +96,17 @@ public class VacWorldFrame extends JFrame {
     private JLabel lblPositionString;
     private JLabel lblStatus;
     private JCheckBox chckbxShowGridLines;
+    private JCheckBox chckbxMaxSpeed;
+    private JCheckBox chckbxFollowRobot;
+
+    // Scrubs back through the steps taken so far
+    private JSlider sliderTimeline;
+    private JLabel lblStepString;
+
+    // The step the map shows, and whether the slider is being moved by the
+    // GUI rather than the user
+    private int shownStep = 0;
+    private boolean movingTimeline = false;
 
     /**
      * Create the frame.
@@ -70,7 +115,7 @@ public class VacWorldFrame extends JFrame {
 
         // Generated code for child components
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setBounds(100, 100, 600, 450);
+        setBounds(100, 100, 600, 570);
 
         JMenuBar menuBar = new JMenuBar();
         setJMenuBar(menuBar);
@@ -153,8 +198,68 @@ public class VacWorldFrame extends JFrame {
         contentPane.add(btnScore);
 
         map = new Map(false);
-        map.setBounds(10, 11, 350, 350);
-        contentPane.add(map);
+        JScrollPane scrollMap = new JScrollPane(map);
+        scrollMap.setBorder(null);
+        scrollMap.setBounds(10, 11, 350, 350);
+        contentPane.add(scrollMap);
+
+        minimap = new Minimap(map);
+        minimap.setBounds(10, 372, 120, 120);
+        contentPane.add(minimap);
+
+        btnZoomIn = new JButton("Zoom In");
+        btnZoomIn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                map.zoomIn();
+                updateZoomButtons();
+            }
+        });
+        btnZoomIn.setBounds(140, 372, 89, 23);
+        contentPane.add(btnZoomIn);
+
+        btnZoomOut = new JButton("Zoom Out");
+        btnZoomOut.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                map.zoomOut();
+                updateZoomButtons();
+            }
+        });
+        btnZoomOut.setBounds(140, 403, 89, 23);
+        contentPane.add(btnZoomOut);
+
+        chckbxFollowRobot = new JCheckBox("Follow robot");
+        chckbxFollowRobot.addItemListener(new ItemListener() {
+            @Override
+            public void itemStateChanged(ItemEvent e) {
+                map.setFollowRobot(e.getStateChange() == ItemEvent.SELECTED);
+            }
+        });
+        chckbxFollowRobot.setBounds(140, 434, 120, 23);
+        contentPane.add(chckbxFollowRobot);
+        updateZoomButtons();
+
+        JLabel lblTimeline = new JLabel("Timeline");
+        lblTimeline.setFont(new Font("Tahoma", Font.BOLD, 11));
+        lblTimeline.setBounds(270, 376, 89, 14);
+        contentPane.add(lblTimeline);
+
+        lblStepString = new JLabel("");
+        lblStepString.setBounds(379, 376, 195, 14);
+        contentPane.add(lblStepString);
+
+        sliderTimeline = new JSlider(0, 0, 0);
+        sliderTimeline.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                if (!movingTimeline) {
+                    showStep(sliderTimeline.getValue());
+                }
+            }
+        });
+        sliderTimeline.setBounds(270, 396, 304, 23);
+        contentPane.add(sliderTimeline);
 
         JLabel lblSeed = new JLabel("Seed");
         lblSeed.setBounds(379, 172, 89, 14);
@@ -220,28 +325,55 @@ public class VacWorldFrame extends JFrame {
         chckbxShowGridLines.setBounds(379, 108, 97, 23);
         contentPane.add(chckbxShowGridLines);
 
+        chckbxMaxSpeed = new JCheckBox("Max speed");
+        chckbxMaxSpeed.setBounds(488, 108, 86, 23);
+        contentPane.add(chckbxMaxSpeed);
+
         // Set properties
         this.setTitle("Vacuum World Simulator");
         this.setResizable(false);
 
-        // Initialize timer for running simulation automatically
-        timer = new Timer((int) (DEFAULT_INTERVAL * 1000),
-                new ActionListener() {
-                    @Override
-                    public void actionPerformed(ActionEvent ae) {
-                        step();
-                    }
-                });
+        // Initialize timer for showing the simulation while it runs. It
+        // fires once per frame of the display, however fast the simulation
+        // runs.
+        timer = new Timer(getRefreshInterval(), new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                refresh();
+            }
+        });
         timer.setInitialDelay(0);
     }
 
     /**
-     * Set the VacuumWorld this GUI represents.
+     * Return the time between frames of the default screen in milliseconds.
+     */
+    private static int getRefreshInterval() {
+        try {
+            GraphicsDevice device = GraphicsEnvironment
+                    .getLocalGraphicsEnvironment().getDefaultScreenDevice();
+            int rate = device.getDisplayMode().getRefreshRate();
+            if (rate > 0) {
+                return Math.max(1, 1000 / rate);
+            }
+        } catch (Exception e) {
+            // Fall back on the default
+        }
+        return DEFAULT_REFRESH_INTERVAL;
+    }
+
+    /**
+     * Set the VacuumWorld this GUI represents. The world must have been
+     * started with a PersistentVacuumState, since the GUI paints its states
+     * while the simulation runs on another thread.
      * 
      * @param world
      */
     public void setWorld(VacuumWorld world) {
         this.world = world;
+        this.runner = new SimulationRunner(world);
+        shownStep = 0;
+        updateTimeline(0, 0);
     }
 
     /**
@@ -252,6 +384,14 @@ public class VacWorldFrame extends JFrame {
         this.map.init(state);
     }
 
+    /**
+     * Enable the zoom buttons that can still zoom the map.
+     */
+    private void updateZoomButtons() {
+        btnZoomIn.setEnabled(map.getZoom() > 0);
+        btnZoomOut.setEnabled(map.getZoom() < map.getMaxZoom());
+    }
+
     /**
      * Show the error message when an invalid interval is given.
      */
@@ -298,17 +438,36 @@ public class VacWorldFrame extends JFrame {
 
     /**
      * Update agent information displayed in this GUI.
+     * 
+     * @param state
+     * @param percept
+     * @param action
      */
-    private void updateAgentInfo() {
-        VacuumState state = world.getState();
-        lblPerceptString.setText(world.getCurrentPercept().toString());
-        lblActionString.setText(world.getCurrentAction().toString());
+    private void updateAgentInfo(VacuumState state, String percept,
+            String action) {
+        lblPerceptString.setText(percept);
+        lblActionString.setText(action);
         lblPositionString
                 .setText(String.format("(%d, %d, %s)", state.getAgentX(),
                         state.getAgentY(), state.getAgentDirString()));
 
     }
 
+    /**
+     * Move the timeline slider to show the given step of the given number,
+     * without going back to the step.
+     * 
+     * @param step
+     * @param numSteps
+     */
+    private void updateTimeline(int step, int numSteps) {
+        movingTimeline = true;
+        sliderTimeline.setMaximum(numSteps);
+        sliderTimeline.setValue(step);
+        movingTimeline = false;
+        lblStepString.setText(String.format("Step %d of %d", step, numSteps));
+    }
+
     /**
      * Reset all agent information displayed to blank values.
      */
@@ -325,21 +484,30 @@ public class VacWorldFrame extends JFrame {
      * @author Daniel Phang
      */
     private void run() {
-        if (!timer.isRunning()) {
-            try {
-                double delay = Double.parseDouble(fieldInterval.getText());
-                if (delay >= MIN_INTERVAL && delay <= MAX_INTERVAL) {
-                    timer.setDelay((int) (delay * 1000));
-                    timer.restart();
-                    updateStatusText(true);
-                    setFieldsEditable(false);
-                    repaint();
-                } else {
+        if (!runner.isRunning()) {
+            if (chckbxMaxSpeed.isSelected()) {
+                runner.setDelay(0, TimeUnit.MILLISECONDS);
+            } else {
+                try {
+                    double delay = Double.parseDouble(fieldInterval.getText());
+                    if (delay >= MIN_INTERVAL && delay <= MAX_INTERVAL) {
+                        runner.setDelay((long) (delay * 1000),
+                                TimeUnit.MILLISECONDS);
+                    } else {
+                        showIntervalErrorMessage();
+                        return;
+                    }
+                } catch (Exception e) {
                     showIntervalErrorMessage();
+                    return;
                 }
-            } catch (Exception e) {
-                showIntervalErrorMessage();
             }
+            showStep(sliderTimeline.getMaximum());
+            runner.start();
+            timer.restart();
+            updateStatusText(true);
+            setFieldsEditable(false);
+            repaint();
         }
     }
 
@@ -347,14 +515,17 @@ public class VacWorldFrame extends JFrame {
      * Reset the simulation.
      */
     public void reset() {
-        // Stop timer
+        // Stop showing the old simulation. Its thread stops after the step it
+        // is running, and the world is left behind.
         timer.stop();
+        runner.requestStop();
 
         // Reset environment state
         VacuumState initState;
         try {
             int randSeed = Integer.parseInt(fieldSeed.getText());
-            initState = VacuumState.getRandomState(randSeed);
+            initState = VacuumState.getRandomState(randSeed, roomWidth,
+                    roomHeight, wallDensity, dirtDensity);
             System.out.println("State generated with seed " + randSeed);
             System.out.println();
         } catch (Exception e) {
@@ -365,9 +536,13 @@ public class VacWorldFrame extends JFrame {
                 return;
             }
         }
-        world = new VacuumWorld();
+        VacuumWorld world = new VacuumWorld();
         VacuumWorld.loadAgent(world, agentName);
-        world.start(initState);
+        if (budgetMillis > 0)
+            world.setDecisionBudget(budgetMillis, TimeUnit.MILLISECONDS);
+        world.setMetrics(metrics);
+        world.start(PersistentVacuumState.of(initState));
+        setWorld(world);
         initMap();
 
         // Update any text on the GUI
@@ -378,29 +553,112 @@ public class VacWorldFrame extends JFrame {
     }
 
     /**
-     * Step the simulation and update the GUI.
+     * Step the simulation once (called by clicking the step button) and update
+     * the GUI.
      */
     private void step() {
-        world.step();
-        updateAgentInfo();
-        repaint();
-
+        if (runner.isRunning()) {
+            return;
+        }
+        runner.step();
+        // Go back to the latest step if the timeline was showing an earlier
+        // one
+        showStep(sliderTimeline.getMaximum());
+        show(runner.take());
         if (world.isComplete()) {
-            stop();
-            btnRun.setEnabled(false);
-            btnStep.setEnabled(false);
-            showScore();
+            complete();
+        }
+    }
+
+    /**
+     * Show the latest snapshot of the running simulation, if there is a new
+     * one, and update the GUI once the simulation thread has stopped.
+     */
+    private void refresh() {
+        // Once the thread is seen to have stopped, it has published its last
+        // snapshot and will not touch the world again
+        boolean running = runner.isRunning();
+        show(runner.take());
+        if (!running) {
+            timer.stop();
+            updateStatusText(false);
+            setFieldsEditable(true);
+            repaint();
+            if (world.isComplete()) {
+                complete();
+            }
         }
     }
 
     /**
-     * Stop the simulation and update the GUI.
+     * Show a snapshot of the simulation. Only the squares that changed since
+     * the last snapshot shown are repainted. If the timeline is showing an
+     * earlier step, it stays there and only the timeline grows.
+     * 
+     * @param snapshot
+     *            the snapshot, or null if there is nothing new to show.
+     */
+    private void show(Snapshot snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        int step = (int) snapshot.getStep();
+        if (shownStep == sliderTimeline.getMaximum()) {
+            map.update(snapshot.getState(), snapshot.getChanged());
+            updateAgentInfo(snapshot.getState(), snapshot.getPercept(),
+                    snapshot.getAction());
+            shownStep = step;
+        }
+        updateTimeline(shownStep, step);
+    }
+
+    /**
+     * Show the state after any step taken so far (called by moving the
+     * timeline slider). The state is rebuilt from the timeline, without
+     * running the agent, and only the squares that differ from the state shown
+     * are repainted.
+     * 
+     * @param step
+     */
+    private void showStep(int step) {
+        if (step == shownStep) {
+            return;
+        }
+        Timeline timeline = runner.getTimeline();
+        PersistentVacuumState shown = (PersistentVacuumState) map.getState();
+        if (step == 0) {
+            PersistentVacuumState state = timeline.getState(0);
+            map.update(state, state.getDirtChanges(shown));
+            resetAgentInfo();
+        } else {
+            // The percept was of the state before the step's action
+            VacPercept percept = new VacPercept(VacPercept.encode(timeline
+                    .getState(step - 1)));
+            PersistentVacuumState state = timeline.getState(step);
+            VacAction action = VacAction.forOpcode(timeline.getOpcode(step));
+            map.update(state, state.getDirtChanges(shown));
+            updateAgentInfo(state, percept.toString(),
+                    String.valueOf(action));
+        }
+        shownStep = step;
+        updateTimeline(step, sliderTimeline.getMaximum());
+    }
+
+    /**
+     * Update the GUI when the simulation is complete.
+     */
+    private void complete() {
+        btnRun.setEnabled(false);
+        btnStep.setEnabled(false);
+        showScore();
+    }
+
+    /**
+     * Stop the simulation (called by clicking the stop button). The GUI is
+     * updated once the simulation thread has finished its current step.
      */
     private void stop() {
-        timer.stop();
-        updateStatusText(false);
-        setFieldsEditable(true);
-        repaint();
+        runner.requestStop();
     }
 
     /**
@@ -420,6 +678,7 @@ public class VacWorldFrame extends JFrame {
      */
     private void setFieldsEditable(boolean b) {
         fieldInterval.setEditable(b);
+        chckbxMaxSpeed.setEnabled(b);
         fieldSeed.setEditable(b);
         btnStep.setEnabled(b);
         btnStop.setEnabled(!b);
@@ -436,6 +695,41 @@ public class VacWorldFrame extends JFrame {
         fieldSeed.setText(String.valueOf(seed));
     }
 
+    /**
+     * Set the room size and densities used when generating random states.
+     * 
+     * @param width
+     * @param height
+     * @param wallDensity
+     * @param dirtDensity
+     */
+    public void setRoom(int width, int height, double wallDensity,
+            double dirtDensity) {
+        this.roomWidth = width;
+        this.roomHeight = height;
+        this.wallDensity = wallDensity;
+        this.dirtDensity = dirtDensity;
+    }
+
+    /**
+     * Set the decision budget of the agent in milliseconds (0 for none), used
+     * when the world is reset.
+     * 
+     * @param millis
+     */
+    public void setDecisionBudget(long millis) {
+        this.budgetMillis = millis;
+    }
+
+    /**
+     * Set the step metrics given to every world created by the frame.
+     * 
+     * @param metrics
+     */
+    public void setMetrics(StepMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Show a popup containing score information.
      */
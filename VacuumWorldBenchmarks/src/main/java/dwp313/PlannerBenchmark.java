@@ -0,0 +1,124 @@
+package dwp313;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vacworld.VacuumState;
+import vacworld.VacuumWorld;
+
+/**
+ * Benchmarks for the dwp313 planner's searches. The agent is run in a room
+ * for part of its run, and the searches are then measured against the world
+ * model it has built up at that point. The benchmarks only read the model,
+ * so every invocation does the same work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlannerBenchmark {
+
+    @Param({ "7", "16", "32" })
+    public int size;
+
+    @Param({ "0.22/0.15", "0.05/0.5" })
+    public String density;
+
+    /** The percentage of the agent's run to complete before measuring. */
+    @Param({ "50" })
+    public int progress;
+
+    private Planner planner;
+    private HierarchicalSearch hierarchicalSearch;
+    private Vector2 goal;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] d = density.split("/");
+        double wallDensity = Double.parseDouble(d[0]);
+        double dirtDensity = Double.parseDouble(d[1]);
+
+        // Find the length of a complete run, then repeat part of it
+        VacuumWorld world = new VacuumWorld();
+        world.addAgent(new VacAgent());
+        world.start(VacuumState.getRandomState(1, size, size, wallDensity,
+                dirtDensity));
+        int steps = 0;
+        while (!world.isComplete()) {
+            world.step();
+            steps++;
+        }
+
+        VacAgent agent = new VacAgent();
+        world = new VacuumWorld();
+        world.addAgent(agent);
+        world.start(VacuumState.getRandomState(1, size, size, wallDensity,
+                dirtDensity));
+        for (int i = 0; i < steps * progress / 100; i++) {
+            world.step();
+        }
+        planner = agent.getPlanner();
+
+        // Search for the explored location furthest from the agent, so the
+        // path search has to cover most of the known map.
+        InternalState iState = planner.iState;
+        int furthest = -1;
+        for (int id = 0; id < iState.getIdLimit(); id++) {
+            if (!iState.isSeen(id)) {
+                continue;
+            }
+            int distance = Math.abs(iState.getLocationX(id)
+                    - iState.getAgentX())
+                    + Math.abs(iState.getLocationY(id) - iState.getAgentY());
+            if (iState.isExplored(id) && !iState.isObstacle(id)
+                    && distance > furthest) {
+                furthest = distance;
+                goal = iState.getLocationPosition(id);
+            }
+        }
+
+        // The clusters are built by the first search, before measuring
+        hierarchicalSearch = new HierarchicalSearch(iState);
+        hierarchicalSearch.findPath(iState.getLocationId(goal));
+    }
+
+    @Benchmark
+    public Vector2 findUnexploredPosition() {
+        return planner.findUnexploredPosition();
+    }
+
+    @Benchmark
+    public LinkedList<Vector2> findPath() {
+        return planner.findPath(goal);
+    }
+
+    @Benchmark
+    public LinkedList<Vector2> findJumpPath() {
+        return planner.findJumpPath(goal);
+    }
+
+    @Benchmark
+    public LinkedList<Vector2> findHierarchicalPath() {
+        return hierarchicalSearch.findPath(planner.iState.getLocationId(goal));
+    }
+
+    @Benchmark
+    public LinkedList<Vector2> findNearestUnexplored() {
+        return planner.findNearestUnexplored();
+    }
+}
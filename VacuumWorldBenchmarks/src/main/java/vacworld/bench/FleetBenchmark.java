@@ -0,0 +1,69 @@
+package vacworld.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vacworld.MultiAgentVacuumWorld;
+import vacworld.VacuumState;
+import vacworld.VacuumWorld;
+
+/**
+ * Benchmarks for running a fleet of dwp313 robots in one room.
+ * runToCompletion() measures a whole run from a freshly generated room, and
+ * fails if any robot runs out of actions, since robots that keep bumping into
+ * each other would otherwise only show up as a slow run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FleetBenchmark {
+
+    @Param({ "20", "32" })
+    public int size;
+
+    @Param({ "2", "3" })
+    public int robots;
+
+    private int seed;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        seed = 0;
+    }
+
+    /** A complete run of the fleet on a new room. */
+    @Benchmark
+    public VacuumState runToCompletion() {
+        MultiAgentVacuumWorld w = new MultiAgentVacuumWorld();
+        for (int k = 0; k < robots; k++) {
+            w.addAgent(VacuumWorld.createAgent("dwp313.VacAgent"));
+        }
+        int s = seed++;
+        w.start(VacuumState.getRandomState(s, size, size,
+                VacuumState.WALL_CHANCE, VacuumState.DIRT_CHANCE
+                        - VacuumState.WALL_CHANCE));
+        w.runToCompletion();
+        for (MultiAgentVacuumWorld.Robot r : w.getRobots()) {
+            if (!r.isOff()) {
+                throw new IllegalStateException("A robot timed out in room "
+                        + s);
+            }
+        }
+        return w.getState();
+    }
+}
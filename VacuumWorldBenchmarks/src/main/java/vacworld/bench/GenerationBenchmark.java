@@ -0,0 +1,64 @@
+package vacworld.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vacworld.VacuumState;
+
+/**
+ * Benchmarks for generating rooms. fillUnreachableSquares() is measured on a
+ * room that has already been filled, which does the same search and leaves
+ * the room unchanged, so every invocation does the same work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class GenerationBenchmark {
+
+    @Param({ "64", "512", "2048" })
+    public int size;
+
+    @Param({ "0.22/0.15", "0.45/0.15" })
+    public String density;
+
+    private double wallDensity;
+    private double dirtDensity;
+    private VacuumState state;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] d = density.split("/");
+        wallDensity = Double.parseDouble(d[0]);
+        dirtDensity = Double.parseDouble(d[1]);
+        state = VacuumState.getRandomState(1, size, size, wallDensity,
+                dirtDensity);
+    }
+
+    /** Generate a room, including the reachability fill. */
+    @Benchmark
+    public VacuumState getRandomState() {
+        return VacuumState.getRandomState(1, size, size, wallDensity,
+                dirtDensity);
+    }
+
+    @Benchmark
+    public VacuumState fillUnreachableSquares() {
+        VacuumState.fillUnreachableSquares(state);
+        return state;
+    }
+}
@@ -0,0 +1,113 @@
+package vacworld.bench;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JViewport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vacworld.VacuumState;
+import vacworld.ui.Map;
+
+/**
+ * Benchmarks for painting the map, in a view the size of the GUI's map panel,
+ * into an off-screen image. paintComponent() repaints the whole view from the
+ * map's cached image, updateAndPaint() measures a step: the robot's square is
+ * drawn again and only that square is painted, and scrollAndPaint() moves the
+ * view by a pixel, so the visible part of the map is drawn from scratch. None
+ * of them should grow with the size of the room.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+    /* The size of the map panel in VacWorldFrame. */
+    private static final int PANEL_SIZE = 350;
+
+    @Param({ "7", "64", "256", "2000" })
+    public int size;
+
+    @Param({ "0.22/0.15" })
+    public String density;
+
+    @Param({ "false", "true" })
+    public boolean gridLines;
+
+    /* Tiles of 50 pixels, one pixel per square, one pixel per 64x64 squares */
+    @Param({ "0", "5", "11" })
+    public int zoom;
+
+    private Map map;
+    private JViewport viewport;
+    private VacuumState state;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] d = density.split("/");
+        map = new Map(gridLines);
+        state = VacuumState.getRandomState(1, size, size,
+                Double.parseDouble(d[0]), Double.parseDouble(d[1]));
+        viewport = new JViewport();
+        viewport.setView(map);
+        viewport.setSize(PANEL_SIZE, PANEL_SIZE);
+        map.init(state);
+        map.setZoom(zoom);
+        map.setSize(map.getPreferredSize());
+        image = new BufferedImage(PANEL_SIZE, PANEL_SIZE,
+                BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+        map.paintComponent(g); // Draw the cached image
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paintComponent() {
+        map.paintComponent(g);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage updateAndPaint() {
+        map.update(state);
+        g.setClip(map.getTileBounds(state.getAgentX(), state.getAgentY()));
+        map.paintComponent(g);
+        g.setClip(null);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage scrollAndPaint() {
+        Point p = viewport.getViewPosition();
+        Rectangle view = map.getVisibleRect();
+        p.x = p.x == 0 && view.width < map.getWidth() ? 1 : 0;
+        viewport.setViewPosition(p);
+        map.paintComponent(g);
+        return image;
+    }
+}
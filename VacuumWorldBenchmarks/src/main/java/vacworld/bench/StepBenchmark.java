@@ -0,0 +1,89 @@
+package vacworld.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vacworld.VacuumState;
+import vacworld.VacuumWorld;
+
+/**
+ * Benchmarks for running the simulation. step() measures a single call to
+ * VacuumWorld.step(), including the agent's decision; runToCompletion()
+ * measures a whole run from a freshly generated room.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StepBenchmark {
+
+    @Param({ "7", "16", "32" })
+    public int size;
+
+    @Param({ "0.22/0.15", "0.05/0.5" })
+    public String density;
+
+    @Param({ "dwp313", "randomagent" })
+    public String agent;
+
+    private double wallDensity;
+    private double dirtDensity;
+    private int seed;
+    private VacuumWorld world;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        String[] d = density.split("/");
+        wallDensity = Double.parseDouble(d[0]);
+        dirtDensity = Double.parseDouble(d[1]);
+        seed = 0;
+        world = newWorld();
+    }
+
+    /*
+     * Start a new world with the next seed. Every iteration uses the same
+     * sequence of rooms, so results are comparable between runs.
+     */
+    private VacuumWorld newWorld() {
+        VacuumWorld w = new VacuumWorld();
+        w.addAgent(VacuumWorld.createAgent(agent + ".VacAgent"));
+        w.start(VacuumState.getRandomState(seed++, size, size, wallDensity,
+                dirtDensity));
+        return w;
+    }
+
+    /**
+     * One step of the simulation. When a run finishes, the next room is
+     * started; that cost is included, but it is amortized over the run.
+     */
+    @Benchmark
+    public VacuumState step() {
+        if (world.isComplete())
+            world = newWorld();
+        world.step();
+        return world.getState();
+    }
+
+    /** A complete run of the simulation on a new room. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public VacuumState runToCompletion() {
+        VacuumWorld w = newWorld();
+        w.runToCompletion();
+        return w.getState();
+    }
+}